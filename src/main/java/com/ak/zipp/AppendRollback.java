@@ -0,0 +1,94 @@
+package com.ak.zipp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * Rollback of an archive being appended to -- kept next to it as {@code <zipfile>.rollback}.
+ *
+ * <p>{@link Switch#APPEND} writes its new entries in place, where the old central directory
+ * started. So it first saves that central directory, and the end records after it, here --
+ * forced to disk before the archive is touched. A failed run puts them back, and the archive
+ * is as it was; so does the next append to the archive, if the run died. The rollback goes
+ * once the new central directory is on disk.</p>
+ *
+ * <p>Format: the offset the saved tail starts at (8 bytes), its length and CRC-32 (4 bytes
+ * each), then the tail. A rollback cut short by a crash doesn't check out, and is dropped --
+ * the archive wasn't touched yet then.</p>
+ */
+class AppendRollback {
+
+	private static final int HEADER_SIZE = 16;
+
+	static Path of(Path zipFilePath) {
+		return zipFilePath.resolveSibling(zipFilePath.getFileName()+".rollback");
+	}
+
+	/**
+	 * Saves the tail of the archive, from {@code offset} on, to its rollback -- on disk when this returns.
+	 */
+	static void save(Path zipFilePath, FileChannel archive, long offset) throws IOException {
+		ByteBuffer saved = ByteBuffer.allocate(HEADER_SIZE+Math.toIntExact(archive.size()-offset));
+		saved.position(HEADER_SIZE);
+		ZipReader.readFully(archive, saved.slice(), offset);
+		CRC32 crc = new CRC32();
+		crc.update(saved.array(), HEADER_SIZE, saved.capacity()-HEADER_SIZE);
+		saved.putLong(0, offset).putInt(8, saved.capacity()-HEADER_SIZE).putInt(12, (int) crc.getValue());
+		saved.position(0);
+
+		Path path = of(zipFilePath);
+		try (FileChannel rollback = FileChannel.open(path,
+				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			while (saved.hasRemaining())
+				rollback.write(saved);
+			rollback.force(true);
+		} catch (IOException e) {
+			Files.deleteIfExists(path);
+			throw e;
+		}
+	}
+
+	/**
+	 * Puts the saved tail back, if the archive has a rollback -- cutting off what was appended
+	 * after it -- and deletes the rollback.
+	 *
+	 * @return whether the archive was rolled back
+	 */
+	static boolean restore(Path zipFilePath) throws IOException {
+		Path path = of(zipFilePath);
+		if (!Files.exists(path))
+			return false;
+		ByteBuffer saved = ByteBuffer.wrap(Files.readAllBytes(path));
+		boolean valid = saved.capacity()>=HEADER_SIZE && saved.getInt(8)==saved.capacity()-HEADER_SIZE;
+		if (valid) {
+			CRC32 crc = new CRC32();
+			crc.update(saved.array(), HEADER_SIZE, saved.capacity()-HEADER_SIZE);
+			valid = saved.getInt(12)==(int) crc.getValue();
+		}
+		if (valid) {
+			long offset = saved.getLong(0);
+			try (FileChannel archive = FileChannel.open(zipFilePath, StandardOpenOption.WRITE)) {
+				archive.truncate(offset);
+				ByteBuffer tail = saved.position(HEADER_SIZE).slice();
+				while (tail.hasRemaining())
+					archive.write(tail, offset+tail.position());
+				archive.force(true);
+			}
+		}
+		Files.delete(path);
+		return valid;
+	}
+
+	/**
+	 * Drops the rollback of an archive whose new central directory is on disk.
+	 */
+	static void discard(Path zipFilePath) throws IOException {
+		Files.deleteIfExists(of(zipFilePath));
+	}
+
+}
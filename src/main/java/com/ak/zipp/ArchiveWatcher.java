@@ -0,0 +1,291 @@
+package com.ak.zipp;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps an archive up to date with its source folder -- {@link Switch#WATCH}.
+ *
+ * <p>After the initial archive, the included folders are watched through a 
+ * {@link WatchService}. Every interval, if anything changed, the changed folders are 
+ * re-listed under the same include/exclude rules, and a fresh archive is published: 
+ * written next to the current one, at {@link #publishingPath}, then moved over it 
+ * atomically -- readers always see a consistent snapshot, the initial one included. 
+ * Unchanged entries are copied over from the current archive still compressed; only 
+ * new or changed files are compressed.</p>
+ *
+ * <p>A publishing that fails is reported, and tried again the next interval, over the 
+ * whole tree -- the current archive stays as it was meanwhile.</p>
+ *
+ * <p>Watching stops when the job is cancelled, or the thread interrupted. The last 
+ * published archive is kept.</p>
+ */
+class ArchiveWatcher {
+
+	static final long DEFAULT_INTERVAL_SECONDS = 600;
+	static final long POLL_MILLIS = 1000;
+
+	/**
+	 * What an entry was made from -- to tell whether it is still up to date.
+	 */
+	record Source(Path path, FileTime lastModified, long size) {
+
+		static Source of(Path path, BasicFileAttributes attrs) {
+			return new Source(path, attrs.lastModifiedTime(), attrs.isDirectory() ? 0 : attrs.size());
+		}
+	}
+
+	private final DirectoryZipper zipper;
+	private final ZipJob job;
+	private final Duration interval;
+	private final Path zipFilePath;
+	private final Path publishing;
+
+	// entry name -> its source, in archive order
+	private final LinkedHashMap<String, Source> sources;
+	// entry name -> where it is in the published archive; only for the entries up to date
+	private Map<String, ZipWriter.Entry> published = new HashMap<>();
+
+	private final WatchService watchService;
+	private final Map<WatchKey, Path> watched = new HashMap<>();
+	private final Set<Path> dirty = new HashSet<>();
+	private boolean overflowed;
+	private ZipResult last;
+
+	ArchiveWatcher(DirectoryZipper zipper, ZipJob job, Duration interval, 
+			Map<String, Source> sources, List<ZipWriter.Entry> entries, ZipResult initial) throws IOException {
+		this.zipper = zipper;
+		this.job = job;
+		this.interval = interval;
+		this.zipFilePath = initial.zipFile();
+		this.publishing = publishingPath(zipFilePath);
+		this.sources = new LinkedHashMap<>(sources);
+		for (ZipWriter.Entry e : entries)
+			published.put(e.name(), e);
+		this.last = initial;
+		this.watchService = zipper.sourceDir().getFileSystem().newWatchService();
+	}
+
+	/**
+	 * Where the archive is written before it is moved over {@code zipFilePath}.
+	 */
+	static Path publishingPath(Path zipFilePath) {
+		return zipFilePath.resolveSibling(zipFilePath.getFileName()+".publishing");
+	}
+
+	/**
+	 * Watches, and publishes, until cancelled.
+	 *
+	 * @return the result of the last publishing -- or of the initial archive, if nothing changed
+	 */
+	ZipResult watch() throws IOException {
+		try (watchService) {
+			for (Source s : sources.values())
+				if (Files.isDirectory(s.path(), LinkOption.NOFOLLOW_LINKS))
+					register(s.path());
+
+			long nextPublish = System.nanoTime() + interval.toNanos();
+			while (!job.isCancelled()) {
+				long waitMillis = Math.max(0, Math.min(POLL_MILLIS, (nextPublish-System.nanoTime())/1_000_000));
+				WatchKey key;
+				try {
+					key = watchService.poll(waitMillis, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				if (key!=null)
+					collect(key);
+				if (System.nanoTime()>=nextPublish) {
+					if (overflowed || !dirty.isEmpty())
+						try {
+							publish();
+						} catch (IOException e) {
+							System.err.println("Could not publish "+zipFilePath+", trying again in "+interval.toSeconds()+"s: "+e);
+							overflowed = true;  // what was rescanned is not in the archive -- rescan it all
+						}
+					nextPublish = System.nanoTime() + interval.toNanos();
+				}
+			}
+		} finally {
+			Files.deleteIfExists(publishing);
+		}
+		return last;
+	}
+
+	private void register(Path dir) throws IOException {
+		watched.put(dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+	}
+
+	private void collect(WatchKey key) {
+		Path dir = watched.get(key);
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind()==OVERFLOW) {
+				overflowed = true;
+				continue;
+			}
+			Path child = dir.resolve((Path) event.context());
+			if (child.equals(zipFilePath) || child.equals(publishing))
+				continue;
+			dirty.add(dir);
+			if (Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS))
+				dirty.add(child);
+		}
+		if (!key.reset())
+			watched.remove(key);
+	}
+
+	/**
+	 * Brings the entries up to date with the changed folders -- or with the whole tree, 
+	 * after events were lost -- then writes and publishes the fresh archive.
+	 */
+	void publish() throws IOException {
+		long start = System.nanoTime();
+		if (overflowed) {
+			for (Path dir : new ArrayList<>(watched.values()))
+				dirty.add(dir);
+			dirty.add(zipper.sourceDir());
+		}
+		overflowed = false;
+		Set<Path> toScan = new HashSet<>(dirty);
+		dirty.clear();
+		for (Path dir : toScan) 
+			rescan(dir);
+
+		long bytes = 0;
+		try (FileChannel current = FileChannel.open(zipFilePath, StandardOpenOption.READ);
+				ZipWriter writer = new ZipWriter(new BufferedOutputStream(
+						zipper.throttle().writing(Files.newOutputStream(publishing)), DirectoryZipper.COPY_BUFFER_BYTES))) {
+			for (var it = sources.entrySet().iterator(); it.hasNext(); ) {
+				var entry = it.next();
+				String name = entry.getKey();
+				Source source = entry.getValue();
+				ZipWriter.Entry upToDate = published.get(name);
+				if (upToDate!=null) 
+					writer.addRaw(upToDate, zipper.throttle().reading(ZipReader.rawData(current, upToDate)));
+				else if (name.endsWith("/"))
+					writer.addDirectory(name, source.lastModified().toMillis());
+				else try (InputStream in = zipper.throttle().reading(Files.newInputStream(source.path()))) {
+					writer.addFile(name, source.lastModified().toMillis(), in);
+				} catch (NoSuchFileException e) {
+					it.remove();  // gone since the rescan -- the next round sees its folder change
+					continue;
+				}
+				bytes += source.size();
+			}
+			writer.finish();
+			published = new HashMap<>();
+			for (ZipWriter.Entry e : writer.entries())
+				published.put(e.name(), e);
+		}
+		Files.move(publishing, zipFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		last = new ZipResult(zipFilePath, sources.size(), bytes, Duration.ofNanos(System.nanoTime()-start));
+	}
+
+	/**
+	 * Re-lists a changed folder: adds the new entries, drops the gone ones, and marks 
+	 * the changed ones for compressing. New sub-folders are scanned, and watched, in full.
+	 */
+	private void rescan(Path dir) throws IOException {
+		String prefix = zipper.entryPrefix(dir);
+		boolean isRoot = dir.equals(zipper.sourceDir());
+
+		// the entries of the folder's direct children, as they were
+		Set<String> gone = new HashSet<>();
+		for (String name : sources.keySet()) 
+			if (name.startsWith(prefix) && name.length()>prefix.length()) {
+				int slash = name.indexOf('/', prefix.length());
+				if (slash<0 || slash==name.length()-1)
+					gone.add(name);
+			}
+
+		if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS) 
+				|| (!isRoot && !zipper.isRecursive())) {
+			dropAll(prefix);
+			return;
+		}
+		zipper.forget(dir);
+		String self = zipper.entryName(dir, true);
+		refresh(self, dir);
+		gone.remove(self);
+
+		try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+			for (Path child : children) {
+				BasicFileAttributes attrs;
+				try {
+					attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+				} catch (NoSuchFileException e) { continue; }
+
+				if (attrs.isDirectory()) {
+					if (!zipper.isRecursive())
+						continue;
+					String name = zipper.entryName(child, true);
+					gone.remove(name);
+					if (!sources.containsKey(name)) {
+						register(child);
+						rescan(child);
+					}
+				} else if (zipper.isIncluded(child)) {
+					String name = zipper.entryName(child, false);
+					gone.remove(name);
+					refresh(name, child, attrs);
+				}
+			}
+		}
+		for (String name : gone) 
+			if (name.endsWith("/"))
+				dropAll(name);
+			else drop(name);
+	}
+
+	private void refresh(String name, Path path) throws IOException {
+		refresh(name, path, Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS));
+	}
+
+	private void refresh(String name, Path path, BasicFileAttributes attrs) {
+		Source now = Source.of(path, attrs);
+		if (!now.equals(sources.get(name))) {
+			sources.put(name, now);
+			published.remove(name);
+		}
+	}
+
+	private void drop(String name) {
+		sources.remove(name);
+		published.remove(name);
+	}
+
+	private void dropAll(String prefix) {
+		sources.keySet().removeIf(name -> name.startsWith(prefix));
+		published.keySet().removeIf(name -> name.startsWith(prefix));
+	}
+
+}
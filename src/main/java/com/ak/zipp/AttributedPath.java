@@ -0,0 +1,23 @@
+package com.ak.zipp;
+
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * A path listed by a directory stream together with its attributes -- as an object store
+ * lists keys with their sizes and times.
+ *
+ * <p>A {@link java.nio.file.spi.FileSystemProvider} whose directory streams return paths
+ * implementing this saves a round trip per file: {@link DirectoryZipper} takes the attributes
+ * of what it lists from the listing, and reads them with {@link Files#readAttributes} only
+ * when there are none -- so a folder costs one round trip, not one per entry.</p>
+ */
+public interface AttributedPath {
+
+	/**
+	 * The attributes of the path as listed, links not followed -- or {@code null} if the
+	 * listing had none.
+	 */
+	BasicFileAttributes listedAttributes();
+
+}
@@ -0,0 +1,134 @@
+package com.ak.zipp;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs many zipp commands in one warm JVM.
+ *
+ * <p>Each line of the input is a full zipp command, as it would be typed on the command
+ * line -- e.g. {@code zipp -s /data/customer1 -d /archive -z customer1.zip}. An argument
+ * with spaces goes in double or single quotes, like {@code -s "/data/customer 1"}. Blank
+ * lines and lines starting with {@code #} are skipped. The commands are run concurrently on a shared
+ * thread pool, and they share the compiled filter patterns of {@link DirectoryZipper}.</p>
+ *
+ * <p>A failing command -- an invalid one, or one whose archive can't be written -- doesn't
+ * stop the batch: it is reported with its line number, and counted in the result of
+ * {@link #run(Reader, ExecutorService)}.</p>
+ */
+public class BatchZipper {
+
+	/**
+	 * Usage: {@code BatchZipper [commandFile|-] [threads]}.
+	 * Reads the commands from stdin if the file is missing or {@code -}.
+	 * The pool size defaults to the number of available processors.
+	 */
+	public static void main(String[] args) throws IOException {
+		int threads = args.length>1
+				? Integer.parseInt(args[1])
+				: Runtime.getRuntime().availableProcessors();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try (Reader in = (args.length==0 || args[0].equals("-"))
+				? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+				: Files.newBufferedReader(Paths.get(args[0]))) {
+			int failed = run(in, pool);
+			if (failed>0)
+				System.exit(1);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Submits every command read from {@code in} to {@code pool},
+	 * and waits for all of them to complete.
+	 *
+	 * @param in the zipp commands, one per line
+	 * @param pool the pool to run the commands on; left open for the caller to reuse
+	 * @return the number of commands that failed
+	 * @throws IOException if the commands can't be read
+	 */
+	public static int run(Reader in, ExecutorService pool) throws IOException {
+		List<Future<?>> jobs = new ArrayList<>();
+		List<String> lines = new ArrayList<>();
+
+		BufferedReader reader = in instanceof BufferedReader br ? br : new BufferedReader(in);
+		String line;
+		while ((line=reader.readLine())!=null) {
+			lines.add(line);
+			String cmd = line.trim();
+			if (cmd.isEmpty() || cmd.startsWith("#")) {
+				jobs.add(null);
+				continue;
+			}
+			jobs.add(pool.submit(() -> {
+				DirectoryZipper.execute(split(cmd));
+				return null;
+			}));
+		}
+
+		int failed = 0;
+		for (int i=0; i<jobs.size(); i++) {
+			if (jobs.get(i)==null)
+				continue;
+			try {
+				jobs.get(i).get();
+			} catch (ExecutionException e) {
+				failed++;
+				System.err.println("line "+(i+1)+" ["+lines.get(i).trim()+"] failed: "+e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while waiting for line "+(i+1), e);
+			}
+		}
+		return failed;
+	}
+
+	/**
+	 * Splits a command line at its spaces -- but not at those inside double or single quotes, 
+	 * which are dropped.
+	 *
+	 * @throws IllegalArgumentException if a quote isn't closed
+	 */
+	static String[] split(String line) {
+		List<String> args = new ArrayList<>();
+		StringBuilder arg = new StringBuilder();
+		boolean inArg = false;
+		char quote = 0;
+		for (char c : line.toCharArray()) {
+			if (quote!=0) {
+				if (c==quote)
+					quote = 0;
+				else arg.append(c);
+			} else if (c=='"' || c=='\'') {
+				quote = c;
+				inArg = true;
+			} else if (Character.isWhitespace(c)) {
+				if (inArg)
+					args.add(arg.toString());
+				arg.setLength(0);
+				inArg = false;
+			} else {
+				arg.append(c);
+				inArg = true;
+			}
+		}
+		if (quote!=0)
+			throw new IllegalArgumentException("Unclosed "+quote+" in ["+line+"]");
+		if (inArg)
+			args.add(arg.toString());
+		return args.toArray(new String[0]);
+	}
+
+}
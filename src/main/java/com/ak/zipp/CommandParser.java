@@ -3,7 +3,7 @@ package com.ak.zipp;
 import java.io.File;
 import java.util.Arrays;
 import java.util.EnumMap;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -54,26 +54,28 @@ public class CommandParser {
 				if (parsedCommands.keySet().contains(Switch.correspondingSwitch(part)))
 					throw new IllegalArgumentException("Duplicate use of switch: "+part);
 				if (currSwitch!=null 
-						&& !currSwitch.equals(Switch.NORECURSE)  // Switch.NORECURSE: the only no-argument Switch
+						&& !currSwitch.isNoArg()  // flags are kept with no arguments
+						&& !currSwitch.isOptionalArg()  // and so are switches with a default argument
 						&& theSet.isEmpty())
 					parsedCommands.remove(currSwitch);
-				parsedCommands.put(currSwitch=Switch.correspondingSwitch(part), theSet=new HashSet<>());
+				parsedCommands.put(currSwitch=Switch.correspondingSwitch(part), theSet=new LinkedHashSet<>());
 			} else {
-				if (part.startsWith("-"))
+				if (part.startsWith("-") && !part.equals("-"))  // a lone dash stands for stdin 
 					if (!allSwitches.contains(fullCmd[1].toUpperCase()))
 						throw new IllegalArgumentException("Invalid switch ["
 								+ part
 								+ "] must be one of "
 								+Switch.allNamesDashed()
 								+" or of "+Switch.allShortNamesDashed());
-				if (currSwitch.equals(Switch.NORECURSE))
-					throw new IllegalArgumentException("The switch -noRecurse does NOT take any arguments"); 
+				if (currSwitch.isNoArg())
+					throw new IllegalArgumentException("The switch "
+							+ (currSwitch.equals(Switch.NORECURSE) ? "-noRecurse" : currSwitch.nameDashed())
+							+ " does NOT take any arguments"); 
 				if (!currSwitch.isMultiValued() && theSet.size()>0)
 					throw new IllegalArgumentException("Invalid argument ["+part+ "] -- switch "+currSwitch+" can NOT take multiple arguments");
-				if ( (part.contains(File.separator) // arguments of multi-valued switches and Switch.ZIPFILE can only be filenames-- no path infp in the filename
-						|| part.equals(".") || part.equals(".."))  // current/parent dir not allowed in arguments multi-valued switches or Switch.ZIPFILE 
-						&& (currSwitch.isMultiValued() 
-								|| currSwitch.equals(Switch.ZIPFILE)))
+				if ( (part.contains(File.separator) // arguments of *CLUDE switches and Switch.ZIPFILE can only be filenames-- no path infp in the filename
+						|| part.equals(".") || part.equals(".."))  // current/parent dir not allowed in arguments of *CLUDE switches or Switch.ZIPFILE 
+						&& currSwitch.takesFileNamesOnly())
 					throw new IllegalArgumentException("Invalid argument "+part
 							+ " -- the switch "+currSwitch+" takes file names without the path info");
 				theSet.add(part);
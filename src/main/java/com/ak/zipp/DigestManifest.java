@@ -0,0 +1,185 @@
+package com.ak.zipp;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Digests of the files zipped, taken from the very bytes fed to the deflater --
+ * {@link Switch#DIGEST}. They go into the archive as its last entry,
+ * {@code zipp-manifest.<algorithm>}, which {@link ZipVerifier} checks the archive against.
+ *
+ * <p>The digests are computed off the zipping thread: each chunk read is copied, and
+ * handed to the zipper's executor, in order, so hashing runs on idle cores while the 
+ * zipping thread deflates. The copies go into {@link #CHUNKS_IN_FLIGHT} buffers, reused 
+ * once hashed -- so at most that many chunks wait to be hashed, and a run allocates no 
+ * more than those.</p>
+ *
+ * <p>The manifest has the format of {@code sha256sum} and the like -- a line per file,
+ * the hex digest, two spaces, the entry name -- so the files extracted from the archive
+ * can be checked by those tools too. Names with a backslash or a newline are escaped,
+ * and their line starts with a backslash.</p>
+ */
+class DigestManifest {
+
+	static final String ENTRY_PREFIX = "zipp-manifest.";
+	static final String DEFAULT_ALGORITHM = "SHA-256";
+	static final int CHUNKS_IN_FLIGHT = 64;
+
+	private final String algorithm;
+	private final Executor executor;
+	private final Map<String, CompletableFuture<byte[]>> digests = new LinkedHashMap<>();
+	// the buffers free for a chunk -- sized as the chunks come
+	private final BlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(CHUNKS_IN_FLIGHT);
+
+	/**
+	 * @param executor hashes the chunks -- in order, a file at a time
+	 * @throws IllegalArgumentException if the JVM has no such digest algorithm
+	 */
+	DigestManifest(String algorithm, Executor executor) {
+		newDigest(algorithm);
+		this.algorithm = algorithm.toUpperCase();
+		this.executor = executor;
+		for (int i=0; i<CHUNKS_IN_FLIGHT; i++)
+			buffers.add(new byte[0]);
+	}
+
+	static MessageDigest newDigest(String algorithm) {
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalArgumentException("Unknown digest algorithm ["+algorithm+"]", e);
+		}
+	}
+
+	String entryName() {
+		return ENTRY_PREFIX+algorithm;
+	}
+
+	/**
+	 * Returns the algorithm of a manifest entry -- or {@code null} if the name is no manifest's.
+	 */
+	static String algorithmOf(String entryName) {
+		return entryName.startsWith(ENTRY_PREFIX) && entryName.indexOf('/')<0
+				? entryName.substring(ENTRY_PREFIX.length())
+				: null;
+	}
+
+	/**
+	 * Wraps the content of a file entry, digesting what is read through it.
+	 * The digest is recorded when the stream is closed.
+	 */
+	InputStream digesting(String entryName, InputStream in) {
+		MessageDigest digest = newDigest(algorithm);
+		return new FilterInputStream(in) {
+			private CompletableFuture<Void> pending = CompletableFuture.completedFuture(null);
+			private final byte[] single = new byte[1];
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int n = super.read(b, off, len);
+				if (n>0)
+					hash(b, off, n);
+				return n;
+			}
+
+			@Override
+			public int read() throws IOException {
+				int c = super.read();
+				if (c>=0) {
+					single[0] = (byte) c;
+					hash(single, 0, 1);
+				}
+				return c;
+			}
+
+			private void hash(byte[] b, int off, int n) throws IOException {
+				byte[] free;
+				try {
+					free = buffers.take();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while digesting "+entryName);
+				}
+				byte[] chunk = free.length>=n ? free : new byte[n];
+				System.arraycopy(b, off, chunk, 0, n);
+				pending = pending.thenRunAsync(() -> {
+					try {
+						digest.update(chunk, 0, n);
+					} finally {
+						buffers.add(chunk);
+					}
+				}, executor);
+			}
+
+			@Override
+			public void close() throws IOException {
+				super.close();
+				digests.put(entryName, pending.thenApply(v -> digest.digest()));
+			}
+		};
+	}
+
+	/**
+	 * Waits for the digests still being computed, and returns the manifest.
+	 */
+	byte[] manifest() {
+		StringBuilder sb = new StringBuilder();
+		for (Map.Entry<String, CompletableFuture<byte[]>> e : digests.entrySet())
+			line(sb, e.getKey(), e.getValue().join());
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	static void line(StringBuilder sb, String name, byte[] digest) {
+		boolean escaped = name.indexOf('\\')>=0 || name.indexOf('\n')>=0;
+		if (escaped)
+			sb.append('\\');
+		sb.append(HexFormat.of().formatHex(digest)).append("  ");
+		sb.append(escaped ? name.replace("\\", "\\\\").replace("\n", "\\n") : name).append('\n');
+	}
+
+	/**
+	 * Reads a manifest back -- entry names to digests, in the order of the lines.
+	 *
+	 * @throws IllegalArgumentException if a line is malformed
+	 */
+	static Map<String, byte[]> parse(byte[] manifest) {
+		Map<String, byte[]> digests = new LinkedHashMap<>();
+		for (String line : new String(manifest, StandardCharsets.UTF_8).split("\n")) {
+			if (line.isEmpty())
+				continue;
+			boolean escaped = line.startsWith("\\");
+			if (escaped)
+				line = line.substring(1);
+			int gap = line.indexOf("  ");
+			if (gap<0)
+				throw new IllegalArgumentException("Malformed manifest line ["+line+"]");
+			String name = line.substring(gap+2);
+			digests.put(escaped ? unescape(name) : name, HexFormat.of().parseHex(line.substring(0, gap)));
+		}
+		return digests;
+	}
+
+	private static String unescape(String name) {
+		StringBuilder sb = new StringBuilder(name.length());
+		for (int i=0; i<name.length(); i++) {
+			char c = name.charAt(i);
+			if (c=='\\' && i+1<name.length())
+				sb.append(name.charAt(++i)=='n' ? '\n' : name.charAt(i));
+			else sb.append(c);
+		}
+		return sb.toString();
+	}
+
+}
@@ -1,57 +1,607 @@
 package com.ak.zipp;
 
-import java.io.File;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
-import java.nio.file.FileVisitResult;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.SimpleFileVisitor;
+import java.nio.file.ProviderNotFoundException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
+import java.util.stream.Stream;
+import java.util.zip.ZipException;
 
 public class DirectoryZipper {
 	// cache for repeated lookups
 	// <K,V> -- K: folder, V: filenames to be zipped in that folder.  
-	private Map<Path, Set<String>> dirContentFiles = new HashMap<>();
+	private Map<Path, Set<String>> dirContentFiles = new ConcurrentHashMap<>();
 
 private Path sourceDir;  
+	// the source folders, each with the start of its entry names -- sourceDir is the first
+	private List<Root> roots;
 private Path destinationDir;
 	private Path zipFilePath; 
 	private EnumMap<Switch, Set<String>> zipCommand;
+	private final ZipJob job;
 
-	private DirectoryZipper(EnumMap<Switch, Set<String>> processCommand) {
+	private DirectoryZipper(EnumMap<Switch, Set<String>> processCommand, ZipJob job) {
 		zipCommand = processCommand;
+		this.job = job;
 	}
 
 	public static void pipe(String[] args) {
+		try {
+			execute(args);
+		} catch (IOException e) { e.printStackTrace(); }
+	}
+
+	/**
+	 * Runs the zipp command like {@link #pipe(String[])} -- but lets a failed zipping 
+	 * throw, for callers that count the failures, like {@link BatchZipper}.
+	 *
+	 * @throws IOException if the archive can't be written, or the sources read
+	 */
+	public static void execute(String[] args) throws IOException {
 		EnumMap<Switch, Set<String>> zipCommand = CommandParser.processCommand(args);
 		if (zipCommand==null)
 			return; 
-		DirectoryZipper dp = new DirectoryZipper(zipCommand);
+		DirectoryZipper dp = new DirectoryZipper(zipCommand, new ZipJob());
+		dp.setDirectories();
+		if (zipCommand.containsKey(Switch.PLAN))
+			System.out.println(dp.plan().toJson());
+		else {
+			dp.run(false);
+			if (zipCommand.containsKey(Switch.DEADLINE))
+				dp.job.result().join().levels().forEach(System.out::println);
+		}
+	}
+
+	/**
+	 * Plans the zipp command, without zipping -- as if it had the {@link Switch#PLAN} switch.
+	 *
+	 * @return the plan, or {@code null} if {@code args} is not a zipp command
+	 * @throws IOException if the source tree can't be traversed
+	 */
+	public static ZipPlan plan(String[] args) throws IOException {
+		EnumMap<Switch, Set<String>> zipCommand = CommandParser.processCommand(args);
+		if (zipCommand==null)
+			return null;
+		zipCommand.putIfAbsent(Switch.PLAN, Set.of());
+		DirectoryZipper dp = new DirectoryZipper(zipCommand, new ZipJob());
+		dp.setDirectories();
+		return dp.plan();
+	}
+
+	/**
+	 * Traverses and filters the source tree as {@link #zipDirWithSwitches()} would, 
+	 * and compresses a sample of the files, to tell what zipping would take.
+	 */
+	private ZipPlan plan() throws IOException {
+		ZipPlan.Estimator estimator = new ZipPlan.Estimator();
+		for (Root root : roots)
+			walk(root, (name, path, attrs) -> estimator.add(name, path, attrs.size(), attrs.isDirectory()));
+		return estimator.plan(throttle, rate(Switch.READLIMIT), rate(Switch.WRITELIMIT));
+	}
+
+	// runs the submitted jobs, unless the caller brings its own executor
+	private static final ExecutorService jobPool = Executors.newCachedThreadPool(
+			r -> { 
+				Thread t = new Thread(r, "zipp-job"); 
+				t.setDaemon(true); 
+				return t; 
+			});
+
+	/**
+	 * Starts zipping asynchronously -- without a pre-scan, so progress has no ETA.
+	 *
+	 * @see #submit(String[], Executor, boolean)
+	 */
+	public static ZipJob submit(String[] args) {
+		return submit(args, jobPool, false);
+	}
+
+	/**
+	 * Starts zipping asynchronously, on the given executor.
+	 *
+	 * <p>The command is parsed, and the folders checked, before returning -- so a bad 
+	 * command throws right away, rather than failing the job.</p>
+	 *
+	 * @param args the zipp command, as in {@link #pipe(String[])}
+	 * @param executor runs the job
+	 * @param preScan whether to count the entries and bytes to zip first -- it gives the 
+	 *                progress its totals and ETA, for the cost of a traversal
+	 * @return the handle of the job
+	 * @throws IllegalArgumentException if the command is invalid, or isn't a zipp command
+	 *                                  -- or has {@link Switch#PLAN}: a plan is no job, see {@link #plan(String[])}
+	 * @throws RuntimeException if the zip file name is taken
+	 */
+	public static ZipJob submit(String[] args, Executor executor, boolean preScan) {
+		EnumMap<Switch, Set<String>> zipCommand = CommandParser.processCommand(args);
+		if (zipCommand==null)
+			throw new IllegalArgumentException("Not a zipp command: "+Arrays.toString(args));
+		if (zipCommand.containsKey(Switch.PLAN))
+			throw new IllegalArgumentException("Switch "+Switch.PLAN.nameDashed()+" zips nothing -- it can NOT be submitted, plan the command instead");
+		ZipJob job = new ZipJob();
+		DirectoryZipper dp = new DirectoryZipper(zipCommand, job);
 		dp.setDirectories();
-		dp.zipDirWithSwitches();
+		executor.execute(() -> {
+			try {
+				dp.run(preScan);
+			} catch (Throwable t) {
+				// the result completes whatever stops the job -- an Error goes on to the executor too
+				job.failed(t);
+				if (t instanceof Error e)
+					throw e;
+			}
+		});
+		return job;
 	}
 
+	/**
+	 * Zips, then -- with {@link Switch#WATCH} -- keeps the archive up to date 
+	 * until the job is cancelled.
+	 */
+	private void run(boolean preScan) throws IOException {
+		if (zipCommand.containsKey(Switch.WATCH))
+			watchedSources = new LinkedHashMap<>();
+		ZipResult result = zip(preScan);
+		if (watchedSources!=null)
+			result = new ArchiveWatcher(this, job, watchInterval(), watchedSources, writer.entries(), result).watch();
+		job.completed(result);
+	}
+
+	private Duration watchInterval() {
+		Set<String> tmpSet = zipCommand.get(Switch.WATCH);
+		return Duration.ofSeconds(tmpSet.isEmpty() 
+				? ArchiveWatcher.DEFAULT_INTERVAL_SECONDS 
+				: Long.parseLong(tmpSet.iterator().next()));
+	}
+
+	// the archive being written, and what goes with it -- set up by zip()
+	private ZipWriter writer;
+	// where it is written -- next to the ZIPFILE if it is to be watched, and moved over it once complete
+	private Path archivePath;
+	// whether an existing ZIPFILE is appended to -- in place, its old central directory saved in its AppendRollback
+	private boolean appending;
+	private ZipJournal journal;
+	// names of the entries a resumed run finds already written
+	private Set<String> alreadyZipped = Set.of();
+	// what each entry was made from -- kept only if the archive is to be watched
+	private Map<String, ArchiveWatcher.Source> watchedSources;
+	// archives of earlier runs -- with CACHE only
+	private ResultCache cache;
+	// the pace of the reads and writes
+	private Throttle throttle = Throttle.NONE;
+	// digests of the files zipped -- with DIGEST only
+	private DigestManifest manifest;
+	// the time the run has, and the deflate levels picked to make it -- with DEADLINE only
+	private Duration deadline;
+	private LevelGovernor governor;
+
+	/**
+	 * Zips as the switches say, reporting to {@link #job}. 
+	 *
+	 * <p>A partial archive is deleted if zipping fails or is cancelled -- unless it is 
+	 * journaled, and zipping failed: then it is left for {@link Switch#RESUME}. An archive 
+	 * to be watched is written next to the ZIPFILE, and moved over it once complete and forced 
+	 * to disk, as {@link ArchiveWatcher} publishes: readers never see it partial. An archive 
+	 * appended to is written in place, over its old central directory -- saved first in its 
+	 * {@link AppendRollback}, which a failure, or the next append after a crash, puts back.</p>
+	 */
+	private ZipResult zip(boolean preScan) throws IOException {
+		job.started();
+		String fingerprint = null;
+		if (cache!=null || zipFilePath==null) {
+			fingerprint = fingerprint();
+			if (zipFilePath==null)  // reproducible -- named after what it is made from
+				zipFilePath = destinationDir.resolve(sourceName()+"_"+fingerprint.substring(0, 16)+".zip");
+			if (reuse(fingerprint))
+				return new ZipResult(zipFilePath, job.entries(), job.bytes(), job.elapsed());
+		}
+
+		boolean resume = zipCommand.containsKey(Switch.RESUME);
+		boolean journaled = resume || zipCommand.containsKey(Switch.JOURNAL);
+		Path journalPath = ZipJournal.of(zipFilePath);
+		appending = zipCommand.containsKey(Switch.APPEND) && Files.exists(zipFilePath);
+		archivePath = watchedSources!=null ? ArchiveWatcher.publishingPath(zipFilePath) : zipFilePath;
+		FileChannel archive = null;
+		try {
+			job.checkCancelled();
+			if ((preScan || deadline!=null) && !zipCommand.containsKey(Switch.FILELIST))
+				preScan();
+			if (deadline!=null)
+				governor = new LevelGovernor(deadline.minus(job.elapsed()), job.progress().totalBytes());
+
+			List<ZipWriter.Entry> done = List.of();
+			long offset = 0;
+			if (resume) {
+				archive = FileChannel.open(zipFilePath, StandardOpenOption.WRITE);
+				done = ZipJournal.resume(journalPath, archive.size());
+				offset = done.isEmpty() ? 0 : done.get(done.size()-1).end();
+			} else if (appending) {
+				// the new entries go over the old central directory -- the entry data before it stays untouched
+				if (AppendRollback.restore(zipFilePath))
+					System.err.println("Rolled back the unfinished append to "+zipFilePath);
+				archive = FileChannel.open(zipFilePath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+				ZipReader.CentralDirectory cd = ZipReader.centralDirectory(archive);
+				done = cd.entries();
+				offset = cd.offset();
+				AppendRollback.save(zipFilePath, archive, offset);
+			} else archive = FileChannel.open(archivePath, 
+					watchedSources!=null ? StandardOpenOption.CREATE : StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+			archive.truncate(offset);
+			archive.position(offset);
+			alreadyZipped = done.stream().map(ZipWriter.Entry::name).collect(Collectors.toSet());
+
+			writer = new ZipWriter(new BufferedOutputStream(throttle.writing(Channels.newOutputStream(archive)), COPY_BUFFER_BYTES), offset, done);
+			if (journaled)
+				journal = new ZipJournal(journalPath, writer, archive);
+
+			if (zipCommand.containsKey(Switch.FILELIST))
+				zipFileList();
+			else if (zipCommand.containsKey(Switch.REPACK))
+				repack();
+			else zipDirWithSwitches();
+			if (manifest!=null)
+				putManifest();
+
+			writer.finish();
+			if (appending || !archivePath.equals(zipFilePath))
+				archive.force(true);
+			writer.close();
+			if (appending)
+				AppendRollback.discard(zipFilePath);
+			if (journal!=null) {
+				journal.close();
+				Files.deleteIfExists(journalPath);
+			}
+			if (!archivePath.equals(zipFilePath))
+				Files.move(archivePath, zipFilePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException | RuntimeException | Error e) {
+			abandon(archive, journaled && !(e instanceof CancellationException));
+			throw e;
+		}
+		if (cache!=null)
+			try {
+				cache.store(fingerprint, zipFilePath);
+			} catch (IOException e) {
+				System.err.println("Could not cache "+zipFilePath+": "+e);
+			}
+		return new ZipResult(zipFilePath, job.entries(), job.bytes(), job.elapsed(),
+				governor==null ? List.of() : governor.changes());
+	}
+
+	/**
+	 * Fingerprints what {@link #zipDirWithSwitches()} is going to zip -- the switches 
+	 * shaping the archive, then the name, size and modification time of each entry, 
+	 * in the order of {@link #walkSorted}.
+	 */
+	private String fingerprint() throws IOException {
+		ResultCache.Fingerprint fingerprint = new ResultCache.Fingerprint();
+		for (Map.Entry<Switch, Set<String>> s : zipCommand.entrySet())
+			switch (s.getKey()) {
+			case SRCDIR, DSTDIR, ZIPFILE, JOURNAL, CACHE -> { /* where it goes, not what it is */ }
+			case READLIMIT, WRITELIMIT, BACKOFF -> { /* how fast it goes, not what it is */ }
+			default -> fingerprint.line(s.getKey().nameDashed()+"\t"+String.join("\t", new TreeSet<>(s.getValue())));
+			}
+		for (Root root : roots)
+			walkSorted(root, (name, path, attrs) -> {
+				job.checkCancelled();
+				fingerprint.line(name+"\t"+(attrs.isDirectory() ? 0 : attrs.size())+"\t"+attrs.lastModifiedTime().toMillis());
+			});
+		return fingerprint.hex();
+	}
+
+	/**
+	 * Puts the archive of an earlier run with the same fingerprint in place of zipping, 
+	 * if there is one: the fingerprint-named ZIPFILE itself, or else the cached archive.
+	 *
+	 * @return whether it did
+	 */
+	private boolean reuse(String fingerprint) throws IOException {
+		if (!Files.exists(zipFilePath)) {
+			Path cached = cache==null ? null : cache.lookup(fingerprint);
+			if (cached==null)
+				return false;
+			try {
+				Files.copy(cached, zipFilePath);
+			} catch (FileAlreadyExistsException e) { 
+				throw e;
+			} catch (IOException e) {
+				Files.deleteIfExists(zipFilePath);
+				throw e;
+			}
+		}
+		try (FileChannel archive = FileChannel.open(zipFilePath, StandardOpenOption.READ)) {
+			List<ZipWriter.Entry> entries = ZipReader.centralDirectory(archive).entries();
+			long bytes = entries.stream().mapToLong(ZipWriter.Entry::size).sum();
+			job.preScanned(entries.size(), bytes);
+			job.bytesDone(bytes);
+			entries.forEach(e -> job.entryDone());
+		} catch (ZipException e) {
+			throw new ZipException(zipFilePath+" is there, but is no complete archive -- "+e.getMessage()
+					+ ". Delete it to zip again.");
+		}
+		return true;
+	}
+
+	/**
+	 * Cleans up after a failed or cancelled run: the partial archive is deleted -- 
+	 * or, if {@code keep}, journaled up to its last complete entry, for a later resume. 
+	 * A copy being published is deleted; an archive appended to is rolled back -- the 
+	 * ZIPFILE stays as it was.
+	 */
+	private void abandon(FileChannel archive, boolean keep) {
+		try {
+			if (journal!=null && keep)
+				try {
+					journal.checkpoint();
+				} catch (IOException e) { /* the last checkpoint stands */ }
+			if (writer!=null)
+				writer.abandon();
+			else if (archive!=null)
+				archive.close();
+			if (journal!=null)
+				journal.close();
+			if (!archivePath.equals(zipFilePath))
+				Files.deleteIfExists(archivePath);
+			else if (appending)
+				AppendRollback.restore(zipFilePath);
+			else if (archive!=null && !keep) {
+				Files.deleteIfExists(zipFilePath);
+				Files.deleteIfExists(ZipJournal.of(zipFilePath));
+			}
+		} catch (IOException e) { e.printStackTrace(); }
+	}
+
+	/**
+	 * Counts what {@link #zipDirWithSwitches()} is going to zip, for the progress 
+	 * of the job. The filtering results are cached for the real pass.
+	 */
+	private void preScan() throws IOException {
+		long[] totals = new long[2];  // entries, bytes
+		for (Root root : roots)
+			walk(root, (name, path, attrs) -> {
+				totals[0]++;
+				if (!attrs.isDirectory())
+					totals[1] += attrs.size();
+			});
+		job.preScanned(totals[0], totals[1]);
+	}
+
+	/**
+	 * Writes a folder entry -- unless a resumed run finds it already written.
+	 */
+	private void putDirectory(String zipEntryName, Path dir, BasicFileAttributes attrs) throws IOException {
+		job.checkCancelled();
+		if (watchedSources!=null)
+			watchedSources.put(zipEntryName, ArchiveWatcher.Source.of(dir, attrs));
+		if (!alreadyZipped.contains(zipEntryName)) {
+			ZipWriter.Entry e = writer.addDirectory(zipEntryName, entryTime(attrs));
+			if (journal!=null)
+				journal.written(e);
+		}
+		job.entryDone();
+	}
+
+	/**
+	 * Writes a file entry -- unless a resumed run finds it already written.
+	 *
+	 * @param content the file's content if it was read ahead, or {@code null} to read the file
+	 */
+	private void putFile(String zipEntryName, Path file, BasicFileAttributes attrs, byte[] content) throws IOException {
+		job.checkCancelled();
+		if (watchedSources!=null)
+			watchedSources.put(zipEntryName, ArchiveWatcher.Source.of(file, attrs));
+		if (alreadyZipped.contains(zipEntryName)) {
+			job.bytesDone(attrs.size());
+		} else {
+			ZipWriter.Entry e;
+			InputStream source = content!=null 
+					? new ByteArrayInputStream(content)
+					: throttle.reading(Files.newInputStream(file));
+			if (governor!=null)
+				writer.setLevel(governor.level());
+			try (InputStream in = new TrackedInputStream(manifest!=null ? manifest.digesting(zipEntryName, source) : source)) {
+				e = writer.addFile(zipEntryName, entryTime(attrs), in);
+			}
+			if (governor!=null)
+				governor.entryDone(zipEntryName, job.bytes(), e.size());
+			if (journal!=null)
+				journal.written(e);
+		}
+		job.entryDone();
+	}
+
+	// the threads hashing for -DIGEST, at most -- on a host serving production, fewer than the processors leaves it cores
+	static final int DIGEST_THREADS = Math.max(1, 
+			Integer.getInteger("zipp.digest.threads", Runtime.getRuntime().availableProcessors()));
+
+	// hashes the files of the -DIGEST runs while their zipping threads deflate -- shared by all the jobs of the JVM
+	private static final ExecutorService digestPool = Executors.newFixedThreadPool(
+			DIGEST_THREADS, 
+			r -> { 
+				Thread t = new Thread(r, "zipp-digest"); 
+				t.setDaemon(true); 
+				return t; 
+			});
+
+	/**
+	 * Writes the {@link DigestManifest} as the last entry -- once the digests still being 
+	 * computed are done.
+	 */
+	private void putManifest() throws IOException {
+		String name = manifest.entryName();
+		if (writer.entries().stream().anyMatch(e -> e.name().equals(name)))
+			throw new ZipException("Entry "+name+" is taken -- the digest manifest can NOT be written");
+		ZipWriter.Entry e = writer.addFile(name, 
+				zipCommand.containsKey(Switch.REPRODUCIBLE) ? REPRODUCIBLE_MTIME : System.currentTimeMillis(), 
+				new ByteArrayInputStream(manifest.manifest()));
+		if (journal!=null)
+			journal.written(e);
+	}
+
+	// entry time of a reproducible archive -- clamped to the earliest DOS time, 1980-01-01 00:00, in any time zone
+	static final long REPRODUCIBLE_MTIME = 0;
+
+	private long entryTime(BasicFileAttributes attrs) {
+		return zipCommand.containsKey(Switch.REPRODUCIBLE) 
+				? REPRODUCIBLE_MTIME 
+				: attrs.lastModifiedTime().toMillis();
+	}
+
+	/**
+	 * Reports the bytes read through it to the {@link #job}, and stops the reading 
+	 * if the job is cancelled.
+	 */
+	private class TrackedInputStream extends FilterInputStream {
+
+		TrackedInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			job.checkCancelled();
+			int n = super.read(b, off, len);
+			if (n>0)
+				job.bytesDone(n);
+			return n;
+		}
+	}
+
+	static final int COPY_BUFFER_BYTES = 64 * 1024;
+
 	private void setDirectories() {
 		Set<String> tmpSet; 
 		String tmpString=null; 
+
+		if (zipCommand.containsKey(Switch.WATCH) && zipCommand.containsKey(Switch.FILELIST))
+			throw new IllegalArgumentException("Switch "+Switch.WATCH.nameDashed()+" watches the "+Switch.SRCDIR.nameDashed()
+					+ " tree -- it can NOT be used with "+Switch.FILELIST.nameDashed());
+		if (zipCommand.containsKey(Switch.REPACK))
+			for (Switch other : List.of(Switch.FILELIST, Switch.WATCH))
+				if (zipCommand.containsKey(other))
+					throw new IllegalArgumentException("Switch "+Switch.REPACK.nameDashed()+" can NOT be used with "+other.nameDashed());
+		if (zipCommand.containsKey(Switch.COLLISION) && !zipCommand.get(Switch.COLLISION).isEmpty())
+			try {
+				Collision.valueOf(zipCommand.get(Switch.COLLISION).iterator().next().toUpperCase());
+			} catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException("Invalid argument for "+Switch.COLLISION.nameDashed()
+						+ " -- must be one of "+Arrays.toString(Collision.values()));
+			}
+		if (zipCommand.containsKey(Switch.REPRODUCIBLE) && zipCommand.containsKey(Switch.WATCH))
+			throw new IllegalArgumentException("Switch "+Switch.REPRODUCIBLE.nameDashed()+" can NOT be used with "+Switch.WATCH.nameDashed());
+		if (zipCommand.containsKey(Switch.CACHE))
+			for (Switch other : List.of(Switch.FILELIST, Switch.REPACK, Switch.APPEND, Switch.RESUME, Switch.WATCH))
+				if (zipCommand.containsKey(other))
+					throw new IllegalArgumentException("Switch "+Switch.CACHE.nameDashed()+" caches "+Switch.SRCDIR.nameDashed()
+							+ " trees only -- it can NOT be used with "+other.nameDashed());
+		if (zipCommand.containsKey(Switch.PLAN))
+			for (Switch other : List.of(Switch.FILELIST, Switch.REPACK, Switch.APPEND, Switch.RESUME, Switch.WATCH))
+				if (zipCommand.containsKey(other))
+					throw new IllegalArgumentException("Switch "+Switch.PLAN.nameDashed()+" plans "+Switch.SRCDIR.nameDashed()
+							+ " trees only -- it can NOT be used with "+other.nameDashed());
+		if (zipCommand.containsKey(Switch.DIGEST)) {
+			for (Switch other : List.of(Switch.REPACK, Switch.APPEND, Switch.RESUME, Switch.WATCH))
+				if (zipCommand.containsKey(other))
+					throw new IllegalArgumentException("Switch "+Switch.DIGEST.nameDashed()+" digests the files zipped by this run"
+							+ " -- it can NOT be used with "+other.nameDashed());
+			manifest = new DigestManifest(zipCommand.get(Switch.DIGEST).stream().findFirst().orElse(DigestManifest.DEFAULT_ALGORITHM), 
+					digestPool);
+		}
+		if (zipCommand.containsKey(Switch.DEADLINE)) {
+			for (Switch other : List.of(Switch.FILELIST, Switch.REPACK, Switch.REPRODUCIBLE, Switch.WATCH))
+				if (zipCommand.containsKey(other))
+					throw new IllegalArgumentException("Switch "+Switch.DEADLINE.nameDashed()+" paces the deflating of a "+Switch.SRCDIR.nameDashed()
+							+ " tree -- it can NOT be used with "+other.nameDashed());
+			if ((tmpSet=zipCommand.get(Switch.DEADLINE)).isEmpty())
+				throw new IllegalArgumentException("Switch "+Switch.DEADLINE.nameDashed()+" needs the time the run has -- like 90s, 30m or 2h");
+			deadline = LevelGovernor.parseBudget(tmpSet.iterator().next());
+		}
+		if (zipCommand.containsKey(Switch.WATCH))
+			for (Switch other : List.of(Switch.JOURNAL, Switch.RESUME))
+				if (zipCommand.containsKey(other))
+					throw new IllegalArgumentException("Switch "+Switch.WATCH.nameDashed()+" publishes complete archives only -- there is no partial one to "
+							+ "journal, it can NOT be used with "+other.nameDashed());
+		if (zipCommand.containsKey(Switch.APPEND))
+			for (Switch other : List.of(Switch.JOURNAL, Switch.RESUME, Switch.WATCH))
+				if (zipCommand.containsKey(other))
+					throw new IllegalArgumentException("Switch "+Switch.APPEND.nameDashed()+" can NOT be used with "+other.nameDashed());
 		
-		// set the source folder
-		if ((tmpSet=zipCommand.get(Switch.SRCDIR))==null || tmpSet.isEmpty()
-				|| !Files.isDirectory(Paths.get(tmpString=tmpSet.iterator().next())))
-			 sourceDir = Paths.get(System.getProperty("user.dir"));
-		else sourceDir = Paths.get(tmpString);
+		// set the source folder(s)
+		if ((tmpSet=zipCommand.get(Switch.SRCDIR))!=null && tmpSet.size()>1) {
+			for (Switch other : List.of(Switch.FILELIST, Switch.WATCH))
+				if (zipCommand.containsKey(other))
+					throw new IllegalArgumentException("Switch "+other.nameDashed()+" takes a single "+Switch.SRCDIR.nameDashed());
+			roots = tmpSet.stream().map(arg -> Root.parse(arg, true)).toList();
+			for (Root root : roots) {
+				if (!Files.isDirectory(root.dir()))
+					throw new IllegalArgumentException("Source folder "+root.dir()+" is not a folder");
+				for (Root other : roots)
+					if (other!=root && (root.prefix().isEmpty() || other.prefix().startsWith(root.prefix())))
+						throw new IllegalArgumentException("Source folders "+root.dir()+" and "+other.dir()
+								+ " need distinct entry prefixes, neither inside the other -- like "+Switch.SRCDIR.nameDashed()+" folder=prefix");
+			}
+		} else if (tmpSet!=null && !tmpSet.isEmpty() && (tmpString=tmpSet.iterator().next()).contains("=")) {
+			roots = List.of(Root.parse(tmpString, false));
+			if (!Files.isDirectory(roots.get(0).dir()))
+				throw new IllegalArgumentException("Source folder "+roots.get(0).dir()+" is not a folder");
+		} else if (tmpSet==null || tmpSet.isEmpty()
+				|| !Files.isDirectory(sourcePath(tmpString=tmpSet.iterator().next())))
+			 roots = List.of(new Root(Paths.get(System.getProperty("user.dir")), ""));
+		else roots = List.of(new Root(sourcePath(tmpString), ""));
+		sourceDir = roots.get(0).dir();
+		if (zipCommand.containsKey(Switch.WATCH) && sourceDir.getFileSystem()!=FileSystems.getDefault())
+			throw new IllegalArgumentException("Switch "+Switch.WATCH.nameDashed()+" watches folders of the default file system only");
 
 		// set the destination folder
 		if ((tmpSet=zipCommand.get(Switch.DSTDIR))==null || tmpSet.isEmpty()
@@ -62,16 +612,59 @@ private Path destinationDir;
 		// set the destination file name
 		if ((tmpSet=zipCommand.get(Switch.ZIPFILE))!=null && !tmpSet.isEmpty()
 				&& !(tmpString=tmpSet.iterator().next()).trim().isEmpty() ) {
-			if ( Files.exists(destinationDir.resolve(tmpString)) ) 
+			if (zipCommand.containsKey(Switch.APPEND)) {
+				// appending -- to the file if it is there, to a new one otherwise 
+			} else if (zipCommand.containsKey(Switch.RESUME)) {
+				// resuming -- the file must be there, and so must its journal
+				if (!Files.exists(ZipJournal.of(destinationDir.resolve(tmpString))))
+					throw new RuntimeException("Nothing to resume -- no journal of "+tmpString+" in "+destinationDir+".");
+			} else if ( Files.exists(destinationDir.resolve(tmpString)) && !zipCommand.containsKey(Switch.PLAN) ) 
 				throw new RuntimeException("Filename "+tmpString+" is taken-- a file by that name already exists in "+destinationDir+".");
-		} else tmpString = sourceDir.getFileName() + "_" + System.currentTimeMillis() + "_" + 
+		} else if (zipCommand.containsKey(Switch.RESUME))
+			throw new RuntimeException("Switch "+Switch.RESUME.nameDashed()+" needs the "+Switch.ZIPFILE.nameDashed()+" of the run to resume.");
+		else if (zipCommand.containsKey(Switch.APPEND))
+			throw new RuntimeException("Switch "+Switch.APPEND.nameDashed()+" needs the "+Switch.ZIPFILE.nameDashed()+" to append to.");
+		else if (zipCommand.containsKey(Switch.REPRODUCIBLE) 
+				&& !zipCommand.containsKey(Switch.FILELIST) && !zipCommand.containsKey(Switch.REPACK)) 
+			tmpString = null;  // named after its fingerprint, by zip()
+		else tmpString = sourceName() + "_" + uniqueStamp() + "_" + 
 				"Zipped-on" + "_" + LocalDate.now().format(DateTimeFormatter.ofPattern("dd-MM-yyyy")) + ".zip";
 		
 		// place the destination-zip file inside the destination folder
-		zipFilePath = destinationDir.resolve(tmpString);
+		zipFilePath = tmpString==null ? null : destinationDir.resolve(tmpString);
+
+		// set the pace
+		if (zipCommand.containsKey(Switch.READLIMIT) || zipCommand.containsKey(Switch.WRITELIMIT) || zipCommand.containsKey(Switch.BACKOFF))
+			throttle = new Throttle(rate(Switch.READLIMIT), rate(Switch.WRITELIMIT), zipCommand.containsKey(Switch.BACKOFF), 
+					job::checkCancelled);
+
+		// set the cache folder
+		if ((tmpSet=zipCommand.get(Switch.CACHE))!=null)
+			cache = new ResultCache(tmpSet.isEmpty() ? ResultCache.DEFAULT_DIR : Paths.get(tmpSet.iterator().next()));
 
 	}
 
+	private long rate(Switch limit) {
+		Set<String> tmpSet = zipCommand.get(limit);
+		if (tmpSet==null)
+			return 0;
+		if (tmpSet.isEmpty())
+			throw new IllegalArgumentException("Switch "+limit.nameDashed()+" needs a rate -- bytes per second, like 500K, 20M or 1G");
+		return Throttle.parseRate(tmpSet.iterator().next());
+	}
+
+	// last stamp handed out for a default file name -- keeps concurrent jobs of one JVM apart
+	private static final AtomicLong lastStamp = new AtomicLong();
+
+	/**
+	 * Returns the current time in millis, bumped past any stamp already handed out, 
+	 * so that concurrent jobs zipping the same source folder get distinct default names.
+	 */
+	private static long uniqueStamp() {
+		long now = System.currentTimeMillis();
+		return lastStamp.accumulateAndGet(now, (prev, curr) -> Math.max(prev + 1, curr));
+	}
+
     /**
      * Compresses the contents of a directory into a ZIP file based on specified switches.
      *
@@ -82,12 +675,27 @@ private Path destinationDir;
      *
      * <p>Supported switches include:</p>
      * <ul>
-     *   <li><b>SRCDIR</b>: Specifies the source directory to compress. Defaults to the current working directory.</li>
+     *   <li><b>SRCDIR</b>: Specifies the source directory to compress. Defaults to the current working directory. 
+     *   Takes several, as {@code folder=prefix} -- see {@link #zipRootsConcurrently()}.</li>
      *   <li><b>DSTDIR</b>: Specifies the destination directory for the ZIP file. Defaults to the current working directory.</li>
      *   <li><b>ZIPFILE</b>: Specifies the name of the ZIP file. Defaults to a generated name based on the source directory and timestamp.</li>
      *   <li><b>NORECURSE</b>: Prevents recursion into subdirectories.</li>
      *   <li><b>INCLUDE</b> / <b>EXCLUDE</b>: Include or exclude files in the source directory based on patterns.</li>
      *   <li><b>DEEPINCLUDE</b> / <b>DEEPEXCLUDE</b>: Include or exclude files in subdirectories based on patterns.</li>
+     *   <li><b>FILELIST</b>: Zips exactly the listed files instead -- see {@link #zipFileList()}.</li>
+     *   <li><b>JOURNAL</b>: Keeps a checkpoint journal of the entries written -- see {@link ZipJournal}.</li>
+     *   <li><b>RESUME</b>: Carries on the journaled run that wrote the ZIPFILE, skipping the entries it completed.</li>
+     *   <li><b>APPEND</b>: Adds the entries not in the existing ZIPFILE yet, over its old central directory.</li>
+     *   <li><b>REPACK</b> / <b>COLLISION</b>: Merges existing archives instead, without recompressing -- see {@link #repack()}.</li>
+     *   <li><b>REPRODUCIBLE</b>: Gives the same bytes for the same content -- entries sorted by name, 
+     *   listed ones too, fixed entry times; without a ZIPFILE, the archive is named after its fingerprint. 
+     *   A repack keeps the order of its archives.</li>
+     *   <li><b>CACHE</b>: Reuses the archive of an earlier run over the same tree -- see {@link ResultCache}.</li>
+     *   <li><b>READLIMIT</b> / <b>WRITELIMIT</b> / <b>BACKOFF</b>: Paces the reads and writes -- see {@link Throttle}.</li>
+     *   <li><b>DIGEST</b>: Adds a manifest of the files' digests, SHA-256 by default -- see {@link DigestManifest}.</li>
+     *   <li><b>DEADLINE</b>: Picks the deflate level of each file, to be done in the time given -- see {@link LevelGovernor}.</li>
+     *   <li><b>PLAN</b>: Zips nothing -- prints what zipping would take instead, see {@link ZipPlan}.</li>
+     *   <li><b>WATCH</b>: Keeps the archive up to date afterwards, republishing every so many seconds -- see {@link ArchiveWatcher}.</li>
      * </ul>
      *
      * <p>The ZIP file is created in the specified or default destination directory.
@@ -98,39 +706,531 @@ private Path destinationDir;
      */
 
 
-		private void zipDirWithSwitches() {
-		try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zipFilePath))) {
-			Files.walkFileTree(sourceDir, new SimpleFileVisitor<Path>() {
-				@Override
-				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-					// Skip the zip file itself
-					if (file.equals(zipFilePath)) 
-						return FileVisitResult.SKIP_SUBTREE;
-
-					// skip if the file is excluded from the zip-list 
-					if (skip(file))
-						return FileVisitResult.SKIP_SUBTREE;
-					
-					// Write each file to the zip
-					String zipEntryName = sourceDir.relativize(file).toString();
-					zos.putNextEntry(new ZipEntry(zipEntryName.replace(File.separator, "/")));
-					Files.copy(file, zos);
-					zos.closeEntry();
-					return FileVisitResult.CONTINUE;
+		private void zipDirWithSwitches() throws IOException {
+			if (zipCommand.containsKey(Switch.REPRODUCIBLE)) {
+				for (Root root : roots)
+					walkSorted(root, this::put);
+				return;
+			}
+			if (roots.size()>1) {
+				zipRootsConcurrently();
+				return;
+			}
+			walk(roots.get(0), this::put);
+	}
+
+	private void put(String zipEntryName, Path path, BasicFileAttributes attrs) throws IOException {
+		if (attrs.isDirectory())
+			putDirectory(zipEntryName, path, attrs);
+		else putFile(zipEntryName, path, attrs, null);
+	}
+
+	// a URI scheme -- of two letters at least, one is a Windows drive
+	private static final Pattern URI_SCHEME = Pattern.compile("^[a-zA-Z][a-zA-Z0-9+.-]+:");
+
+	/**
+	 * Resolves a source folder argument: a path of the default file system, or the URI of 
+	 * a path of any installed {@link java.nio.file.spi.FileSystemProvider} -- like 
+	 * {@code jar:file:///data/old.zip!/logs} for a folder of an existing archive. A file 
+	 * system not open yet is opened, and stays open for the later runs of the JVM.
+	 *
+	 * <p>An argument is taken for a URI only if it starts with a scheme, and either has a 
+	 * {@code :/} or is no existing local path -- so a folder like {@code run:1} stays a folder.</p>
+	 *
+	 * @throws IllegalArgumentException if the URI is invalid, or no provider takes it
+	 */
+	static Path sourcePath(String arg) {
+		if (!URI_SCHEME.matcher(arg).lookingAt() || (!arg.contains(":/") && isLocalPath(arg)))
+			return Paths.get(arg);
+		URI uri;
+		try {
+			uri = new URI(arg);
+		} catch (URISyntaxException e) {
+			throw new IllegalArgumentException("Invalid source URI ["+arg+"]", e);
+		}
+		try {
+			try {
+				return Paths.get(uri);
+			} catch (FileSystemNotFoundException e) {
+				try {
+					FileSystems.newFileSystem(uri, Map.of());
+				} catch (FileSystemAlreadyExistsException raced) {
+					// opened by a concurrent job meanwhile
+				} catch (IOException ex) {
+					throw new UncheckedIOException("Could not open the file system of "+arg, ex);
 				}
+				return Paths.get(uri);
+			}
+		} catch (ProviderNotFoundException | FileSystemNotFoundException e) {
+			throw new IllegalArgumentException("No file system for the source ["+arg+"] -- "+e.getMessage(), e);
+		}
+	}
+
+	private static boolean isLocalPath(String arg) {
+		try {
+			return Files.exists(Paths.get(arg));
+		} catch (InvalidPathException e) {
+			return false;
+		}
+	}
 
-				@Override
-				public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
-					if (!sourceDir.equals(dir) && zipCommand.containsKey(Switch.NORECURSE))
-						return FileVisitResult.SKIP_SUBTREE;
+	/**
+	 * The name default archive names start with -- the source folder's, or {@code zipp} 
+	 * for the root of a file system.
+	 */
+	private String sourceName() {
+		return sourceDir.getFileName()==null ? "zipp" : sourceDir.getFileName().toString();
+	}
 
-					String zipEntryName = sourceDir.relativize(dir).toString() + "/";
-					zos.putNextEntry(new ZipEntry(zipEntryName.replace(File.separator, "/")));
-					zos.closeEntry();
-					return FileVisitResult.CONTINUE;
+	/**
+	 * A source folder, and the start of the entry names of its content -- empty, 
+	 * or ending with a slash.
+	 */
+	record Root(Path dir, String prefix) {
+
+		/**
+		 * Parses a {@link Switch#SRCDIR} argument -- {@code folder} or {@code folder=prefix}. 
+		 * An argument that is a folder as a whole is never split, so Hive-style partitions 
+		 * like {@code /data/dt=2024} stay folders; {@code /data/dt=2024=p} gives them a prefix.
+		 *
+		 * @param defaultPrefix the prefix if the argument gives none
+		 */
+		static Root parse(String arg, boolean defaultPrefix) {
+			int eq = arg.lastIndexOf('=');
+			if (eq>=0 && isFolder(arg))
+				eq = -1;
+			Path dir = sourcePath(eq<0 ? arg : arg.substring(0, eq));
+			String prefix = eq>=0 
+					? arg.substring(eq+1) 
+					: defaultPrefix && dir.getFileName()!=null ? dir.getFileName().toString() : "";
+			prefix = prefix.replace('\\', '/').replaceAll("^/+|/+$", "");
+			return new Root(dir, prefix.isEmpty() ? "" : prefix+"/");
+		}
+
+		private static boolean isFolder(String arg) {
+			try {
+				return Files.isDirectory(sourcePath(arg));
+			} catch (IllegalArgumentException | UncheckedIOException e) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * An entry to be -- a folder, or a file that passed the filters -- met by {@link #walk} 
+	 * or {@link #walkSorted}.
+	 */
+	@FunctionalInterface
+	private interface SourceVisitor {
+		void visit(String zipEntryName, Path path, BasicFileAttributes attrs) throws IOException;
+	}
+
+	/**
+	 * Walks a source folder in the order of the file system, meeting the folders -- down 
+	 * to the first level only with {@link Switch#NORECURSE} -- and the files that pass the filters.
+	 * Symbolic links are not followed.
+	 */
+	private void walk(Root root, SourceVisitor visitor) throws IOException {
+		walk(root, root.dir(), Files.readAttributes(root.dir(), BasicFileAttributes.class), visitor, false);
+	}
+
+	/**
+	 * Walks a source folder like {@link #walk}, but with the content of each folder in the 
+	 * order of the names -- so the entries come in the same order on any file system. 
+	 */
+	private void walkSorted(Root root, SourceVisitor visitor) throws IOException {
+		walk(root, root.dir(), Files.readAttributes(root.dir(), BasicFileAttributes.class), visitor, true);
+	}
+
+	private void walk(Root root, Path dir, BasicFileAttributes dirAttrs, SourceVisitor visitor, boolean sorted) throws IOException {
+		job.checkCancelled();
+		visitor.visit(entryName(root, dir, true), dir, dirAttrs);
+		List<Listed> children = list(dir);
+		if (sorted)
+			children.sort(Comparator.comparing(child -> child.path().getFileName().toString()));
+		for (Listed child : children) {
+			if (child.attrs().isDirectory()) {
+				if (!zipCommand.containsKey(Switch.NORECURSE))
+					walk(root, child.path(), child.attrs(), visitor, sorted);
+				continue;
+			}
+			job.checkCancelled();
+			if (!isArchive(child.path()) && !skip(child.path()))
+				visitor.visit(entryName(root, child.path(), false), child.path(), child.attrs());
+		}
+	}
+
+	/**
+	 * A folder or file in a folder's listing, with its attributes -- links not followed.
+	 */
+	private record Listed(Path path, BasicFileAttributes attrs) {}
+
+	/**
+	 * Lists a folder, in a single pass over a {@link DirectoryStream}: its entries, each with 
+	 * its attributes -- and, from the same listing, the filtering of its files for {@link #skip}. 
+	 * On a provider listing the attributes along with the names, that is one round trip for 
+	 * the folder -- see {@link AttributedPath}.
+	 */
+	private List<Listed> list(Path dir) throws IOException {
+		List<Listed> children = new ArrayList<>();
+		Set<String> fileNames = new HashSet<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+			for (Path child : stream) {
+				BasicFileAttributes attrs = attributes(child);
+				children.add(new Listed(child, attrs));
+				// a link to a file passes for the file, as it always has
+				if (attrs.isRegularFile() || (attrs.isSymbolicLink() && Files.isRegularFile(child)))
+					fileNames.add(child.getFileName().toString());
+			}
+		}
+		filter(dir, fileNames);
+		return children;
+	}
+
+	/**
+	 * The attributes of a path met in a listing -- those listed with it, if its provider 
+	 * gives them, or else read, links not followed.
+	 */
+	static BasicFileAttributes attributes(Path path) throws IOException {
+		if (path instanceof AttributedPath listed && listed.listedAttributes()!=null)
+			return listed.listedAttributes();
+		return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+	}
+
+	/**
+	 * A folder or file met by a walker of {@link #zipRootsConcurrently()} -- 
+	 * with its content, if it is small enough to be read ahead.
+	 */
+	private record Walked(String zipEntryName, Path path, BasicFileAttributes attrs, byte[] content) {}
+
+	/**
+	 * Zips several source folders at once: each is walked -- and its small files read -- 
+	 * on a thread of its own, so the I/O of folders on different disks overlaps. The 
+	 * walkers hand what they meet to this thread, the only one writing the archive, 
+	 * through a queue of {@link #PREFETCH_WINDOW} entries. Files larger than 
+	 * {@link #PREFETCH_MAX_BYTES} are streamed by this thread.
+	 *
+	 * <p>The entries of the folders come interleaved, each folder's in walking order.</p>
+	 */
+	private void zipRootsConcurrently() throws IOException {
+		BlockingQueue<Walked> queue = new ArrayBlockingQueue<>(PREFETCH_WINDOW);
+		AtomicBoolean stop = new AtomicBoolean();
+		boolean readAhead = !throttle.isReadLimited();
+		List<CompletableFuture<Void>> walkers = new ArrayList<>();
+		for (Root root : roots)
+			walkers.add(CompletableFuture.runAsync(() -> {
+				try {
+					walk(root, (name, path, attrs) -> {
+						byte[] content = readAhead && attrs.isRegularFile() && attrs.size()<=PREFETCH_MAX_BYTES
+								? Files.readAllBytes(path)
+								: null;
+						Walked walked = new Walked(name, path, attrs, content);
+						try {
+							while (!queue.offer(walked, 100, TimeUnit.MILLISECONDS))
+								if (stop.get())
+									throw new CancellationException("Zipping stopped");
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							throw new CancellationException("Interrupted");
+						}
+					});
+				} catch (IOException e) { 
+					throw new UncheckedIOException(e); 
 				}
+			}, jobPool));
+		CompletableFuture<Void> all = CompletableFuture.allOf(walkers.toArray(new CompletableFuture<?>[0]));
+
+		try {
+			while (true) {
+				Walked w = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (w!=null) {
+					if (w.attrs().isDirectory())
+						putDirectory(w.zipEntryName(), w.path(), w.attrs());
+					else putFile(w.zipEntryName(), w.path(), w.attrs(), w.content());
+					continue;
+				}
+				job.checkCancelled();
+				for (CompletableFuture<Void> walker : walkers)
+					if (walker.isCompletedExceptionally())
+						walker.join();  // throws -- the walkers still at it stop at their next entry
+				if (all.isDone() && queue.isEmpty())
+					break;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new CancellationException("Interrupted");
+		} catch (CompletionException e) { 
+			if (e.getCause() instanceof UncheckedIOException u)
+				throw u.getCause();
+			if (e.getCause() instanceof RuntimeException r)
+				throw r;
+			throw e;
+		} finally {
+			stop.set(true);
+		}
+	}
+
+	// files up to this size are read ahead, off the zipping thread 
+	static final int PREFETCH_MAX_BYTES = 1 << 20;
+	// how many listed files may be in flight (stat-ed or read ahead) at a time
+	static final int PREFETCH_WINDOW = 64;
+
+	// shared by all the jobs of the JVM
+	private static final ExecutorService ioPool = Executors.newFixedThreadPool(
+			Math.max(4, 2*Runtime.getRuntime().availableProcessors()), 
+			r -> { 
+				Thread t = new Thread(r, "zipp-io"); 
+				t.setDaemon(true); 
+				return t; 
 			});
-		} catch (IOException e) { e.printStackTrace(); }
+
+	/**
+	 * A listed file, stat-ed -- and, if it is small, read -- on the {@link #ioPool}.
+	 */
+	private record Prefetched(Path file, BasicFileAttributes attrs, byte[] content) {}
+
+	/**
+	 * Zips exactly the files of the {@link Switch#FILELIST} list -- no traversal, no filtering.
+	 *
+	 * <p>The list names one path per line, or NUL-separated if it contains any NUL, 
+	 * relative to the source folder. It is read from the file given with the switch, 
+	 * or from stdin if that is {@code -}. A listed folder gets its own entry only -- 
+	 * its contents must be listed as well to be zipped.</p>
+	 *
+	 * <p>The stat and read calls of the listed files are issued concurrently, up to 
+	 * {@link #PREFETCH_WINDOW} files ahead of the entry being written. Files larger than 
+	 * {@link #PREFETCH_MAX_BYTES} are streamed by the zipping thread instead.</p>
+	 *
+	 * @throws IllegalArgumentException if a listed path resolves outside the source folder
+	 */
+	private void zipFileList() throws IOException {
+		List<Path> files = readFileList();
+		job.preScanned(files.size(), -1);
+		try {
+			Deque<CompletableFuture<Prefetched>> inFlight = new ArrayDeque<>();
+			int next = 0;
+			while (next<files.size() || !inFlight.isEmpty()) {
+				while (next<files.size() && inFlight.size()<PREFETCH_WINDOW) 
+					inFlight.add(prefetch(files.get(next++), !throttle.isReadLimited()));
+
+				job.checkCancelled();
+				Prefetched p = inFlight.poll().join();
+				if (p.attrs().isDirectory()) 
+					putDirectory(entryName(p.file(), true), p.file(), p.attrs());
+				else putFile(entryName(p.file(), false), p.file(), p.attrs(), p.content());
+			}
+		} catch (CompletionException e) { 
+			if (e.getCause() instanceof UncheckedIOException u)
+				throw u.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * @param readAhead whether to read small files as well -- not if the reads are throttled, 
+	 * for the shared pool would be held up by the throttle
+	 */
+	private static CompletableFuture<Prefetched> prefetch(Path file, boolean readAhead) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+				byte[] content = readAhead && attrs.isRegularFile() && attrs.size()<=PREFETCH_MAX_BYTES
+						? Files.readAllBytes(file)
+						: null;
+				return new Prefetched(file, attrs, content);
+			} catch (IOException e) { throw new UncheckedIOException(e); }
+		}, ioPool);
+	}
+
+	/**
+	 * Reads the {@link Switch#FILELIST} list, resolving each of its paths against the source folder.
+	 * Blank names, and the zip file itself, are left out -- and so are paths listed before, 
+	 * under any spelling: {@code a.txt}, {@code ./a.txt} and {@code d/../a.txt} are one entry. 
+	 * With {@link Switch#REPRODUCIBLE} the paths are sorted by entry name, whatever the order listed.
+	 */
+	private List<Path> readFileList() throws IOException {
+		String listSource = zipCommand.get(Switch.FILELIST).stream().findFirst().orElse("-");
+		byte[] raw;
+		if (listSource.equals("-")) 
+			raw = System.in.readAllBytes();
+		else try (InputStream in = Files.newInputStream(Paths.get(listSource))) {
+			raw = in.readAllBytes();
+		}
+		String list = new String(raw, StandardCharsets.UTF_8);
+		String[] names = list.indexOf('\0')>=0 ? list.split("\0") : list.split("\r?\n");
+
+		Path root = sourceDir.toAbsolutePath().normalize();
+		Set<Path> files = new LinkedHashSet<>();
+		for (String name : names) {
+			if (name.isBlank())
+				continue;
+			Path file = root.resolve(name).normalize();
+			if (!file.startsWith(root) || file.equals(root))
+				throw new IllegalArgumentException("Listed path "+name+" is not inside the source folder "+sourceDir);
+			if (!file.equals(zipFilePath.toAbsolutePath().normalize()))
+				files.add(sourceDir.resolve(root.relativize(file)));
+		}
+		List<Path> sorted = new ArrayList<>(files);
+		if (zipCommand.containsKey(Switch.REPRODUCIBLE))
+			sorted.sort(Comparator.comparing(file -> entryName(file, false)));
+		return sorted;
+	}
+
+	/**
+	 * How {@link #repack()} settles two archives holding a file entry of the same name -- 
+	 * {@link Switch#COLLISION}.
+	 */
+	enum Collision { 
+		FIRST,  // keep the entry of the archive listed first
+		LAST,  // keep the entry of the archive listed last
+		FAIL  // give up
+	}
+
+	/**
+	 * Merges the {@link Switch#REPACK} archives into one, copying each entry's compressed 
+	 * data, CRC and sizes as they are -- nothing is inflated or deflated.
+	 *
+	 * <p>The entries go in the order of the archives, then of their central directories. 
+	 * File entries are filtered by their base names -- with INCLUDE/EXCLUDE at the archive's 
+	 * root, DEEPINCLUDE/DEEPEXCLUDE below it, and NORECURSE dropping everything below. 
+	 * Folder entries are merged silently; file entries of the same name are settled 
+	 * by {@link Collision}.</p>
+	 *
+	 * @throws ZipException if an archive is broken, or names collide under {@link Collision#FAIL}
+	 */
+	private void repack() throws IOException {
+		Collision policy = zipCommand.containsKey(Switch.COLLISION) && !zipCommand.get(Switch.COLLISION).isEmpty()
+				? Collision.valueOf(zipCommand.get(Switch.COLLISION).iterator().next().toUpperCase())
+				: Collision.FIRST;
+
+		List<FileChannel> inputs = new ArrayList<>();
+		try {
+			// entry name -> the archive it comes from, and the entry there
+			Map<String, Map.Entry<FileChannel, ZipWriter.Entry>> chosen = new LinkedHashMap<>();
+			Map<String, Path> chosenFrom = new HashMap<>();
+			for (String archiveName : zipCommand.get(Switch.REPACK)) {
+				Path archivePath = Paths.get(archiveName);
+				FileChannel input = FileChannel.open(archivePath, StandardOpenOption.READ);
+				inputs.add(input);
+				for (ZipWriter.Entry e : ZipReader.centralDirectory(input).entries()) {
+					if (!isRepacked(e.name()))
+						continue;
+					if (chosen.containsKey(e.name()) && !e.isDirectory()) {
+						if (policy==Collision.FAIL)
+							throw new ZipException("Entry "+e.name()+" is in both "+chosenFrom.get(e.name())+" and "+archivePath);
+						if (policy==Collision.FIRST)
+							continue;
+					} else if (chosen.containsKey(e.name()))
+						continue;
+					chosen.put(e.name(), Map.entry(input, e));
+					chosenFrom.put(e.name(), archivePath);
+				}
+			}
+			job.preScanned(chosen.size(), chosen.values().stream().mapToLong(c -> c.getValue().compressedSize()).sum());
+
+			for (Map.Entry<FileChannel, ZipWriter.Entry> c : chosen.values()) 
+				putRaw(c.getValue(), c.getKey());
+		} finally {
+			for (FileChannel input : inputs)
+				input.close();
+		}
+	}
+
+	/**
+	 * Whether an entry of a {@link Switch#REPACK} archive passes the filter switches.
+	 */
+	private boolean isRepacked(String entryName) {
+		boolean isDirectory = entryName.endsWith("/");
+		String path = isDirectory ? entryName.substring(0, entryName.length()-1) : entryName;
+		int slash = path.lastIndexOf('/');
+		boolean atRoot = slash<0;
+		if (!atRoot && zipCommand.containsKey(Switch.NORECURSE))
+			return false;
+		if (isDirectory)
+			return true;
+
+		Set<String> name = Set.of(path.substring(slash+1));
+		Set<String> includeSet = zipCommand.get(atRoot ? Switch.INCLUDE : Switch.DEEPINCLUDE);
+		Set<String> excludeSet = zipCommand.get(atRoot ? Switch.EXCLUDE : Switch.DEEPEXCLUDE);
+		return (includeSet.equals(INCLUDE_DEFAULT) || !filterByPatterns(name, includeSet).isEmpty())
+				&& filterByPatterns(name, excludeSet).isEmpty();
+	}
+
+	/**
+	 * Copies an entry of another archive as it is -- unless a resumed run finds it already written.
+	 */
+	private void putRaw(ZipWriter.Entry source, FileChannel from) throws IOException {
+		job.checkCancelled();
+		if (alreadyZipped.contains(source.name())) {
+			job.bytesDone(source.compressedSize());
+		} else {
+			ZipWriter.Entry copy = !zipCommand.containsKey(Switch.REPRODUCIBLE) ? source 
+					: new ZipWriter.Entry(source.name(), source.method(), source.flags(), ZipWriter.dosTime(REPRODUCIBLE_MTIME), 
+							source.crc(), source.compressedSize(), source.size(), source.offset(), source.end(),
+							source.foreign()==null ? null : source.foreign().withoutTimes());
+			ZipWriter.Entry e = writer.addRaw(copy, new TrackedInputStream(throttle.reading(ZipReader.rawData(from, source))));
+			if (journal!=null)
+				journal.written(e);
+		}
+		job.entryDone();
+	}
+
+	//// for the ArchiveWatcher
+
+	Throttle throttle() {
+		return throttle;
+	}
+
+	Path sourceDir() {
+		return sourceDir;
+	}
+
+	boolean isRecursive() {
+		return !zipCommand.containsKey(Switch.NORECURSE);
+	}
+
+	/**
+	 * The name of the entry of a file or folder under the source folder.
+	 */
+	String entryName(Path path, boolean isDirectory) {
+		return entryName(roots.get(0), path, isDirectory);
+	}
+
+	private static String entryName(Root root, Path path, boolean isDirectory) {
+		if (!root.prefix().isEmpty() && root.dir().equals(path))
+			return root.prefix();
+		String zipEntryName = root.prefix() + root.dir().relativize(path).toString()
+				.replace(root.dir().getFileSystem().getSeparator(), "/");
+		return isDirectory ? zipEntryName + "/" : zipEntryName;
+	}
+
+	/**
+	 * The start of the entry names of the files and folders in {@code dir}.
+	 */
+	String entryPrefix(Path dir) {
+		return dir.equals(sourceDir) ? roots.get(0).prefix() : entryName(dir, true);
+	}
+
+	/**
+	 * Whether a file of the source tree goes into the archive -- as the include/exclude switches say.
+	 */
+	boolean isIncluded(Path file) throws IOException {
+		return !isArchive(file) && !skip(file);
+	}
+
+	/**
+	 * Whether a file is the archive itself, its copy being written, or its rollback -- never zipped.
+	 */
+	private boolean isArchive(Path file) {
+		return file.equals(zipFilePath) || file.equals(archivePath) 
+				|| (zipFilePath!=null && file.equals(AppendRollback.of(zipFilePath)));
+	}
+
+	/**
+	 * Drops the cached filtering of a folder -- for when its content changed.
+	 */
+	void forget(Path dir) {
+		dirContentFiles.remove(dir);
 	}
 
 	/**
@@ -150,39 +1250,45 @@ private Path destinationDir;
 		Path folder = file.getParent();
 		Set<String> theZippables = null;
 		if ((theZippables=dirContentFiles.get(folder))==null) {
-			theZippables = filter(folder, 
-					zipCommand.get(folder.equals(sourceDir)?Switch.INCLUDE:Switch.DEEPINCLUDE), 
-					zipCommand.get(folder.equals(sourceDir)?Switch.EXCLUDE:Switch.DEEPEXCLUDE)					
-					);
-			dirContentFiles.put(folder, theZippables);
+			Set<String> fileNames;
+			try (Stream<Path> list = Files.list(folder)) {
+				fileNames = list.filter(Files::isRegularFile)
+						.map(path -> path.getFileName().toString())
+						.collect(Collectors.toSet());
+			}
+			theZippables = filter(folder, fileNames);
 		}
 		return !theZippables.contains(file.getFileName().toString());
 	}
 
 	/**
-	 * Filters the files in a specified folder based on inclusion and exclusion patterns.
+	 * Filters the names of the regular files of a folder, as the include/exclude switches 
+	 * of its level say, and caches the result for {@link #skip}.
+	 */
+	private Set<String> filter(Path folder, Set<String> fileNames) {
+		boolean isRoot = roots.stream().anyMatch(root -> root.dir().equals(folder));
+		Set<String> theZippables = filter(fileNames, 
+				zipCommand.get(isRoot?Switch.INCLUDE:Switch.DEEPINCLUDE), 
+				zipCommand.get(isRoot?Switch.EXCLUDE:Switch.DEEPEXCLUDE));
+		dirContentFiles.put(folder, theZippables);
+		return theZippables;
+	}
+
+	/**
+	 * Filters the names of the files in a folder based on inclusion and exclusion patterns.
 	 *
-	 * <p>This method retrieves all regular files in the given folder and filters them based
-	 * on the specified inclusion and exclusion patterns. Files that match any of the inclusion
-	 * patterns and do not match any of the exclusion patterns are returned.
+	 * <p>Files that match any of the inclusion patterns and do not match any of 
+	 * the exclusion patterns are returned.
 	 *
-	 * @param folder the folder containing the files to be filtered; must not be {@code null}
+	 * @param fileNames the names of the regular files in the folder; must not be {@code null}
 	 * @param includeSet the set of inclusion patterns; must not be {@code null}. Patterns can
 	 *                   include wildcards {@code *} and {@code ?}.
 	 * @param excludeSet the set of exclusion patterns; must not be {@code null}. Patterns can
 	 *                   include wildcards {@code *} and {@code ?}.
 	 * @return a set of file names that match the inclusion patterns but not the exclusion patterns
-	 * @throws IOException 
-	 * @throws RuntimeException if an I/O error occurs while reading files from the folder
-	 * @throws NullPointerException if {@code folder}, {@code includeSet}, or {@code excludeSet} is {@code null}
+	 * @throws NullPointerException if {@code fileNames}, {@code includeSet}, or {@code excludeSet} is {@code null}
 	 */
-	private static Set<String> filter(Path folder, Set<String> includeSet, Set<String> excludeSet) throws IOException {
-		Set<String> fileNames = new HashSet<>();
-			fileNames = Files.list(folder)
-					.filter(Files::isRegularFile)
-					.map(path -> path.getFileName().toString())
-					.collect(Collectors.toSet());
-
+	private static Set<String> filter(Set<String> fileNames, Set<String> includeSet, Set<String> excludeSet) {
 		Set<String> include = includeSet.equals(INCLUDE_DEFAULT)?fileNames:filterByPatterns(fileNames, includeSet);
 		Set<String> exclude = excludeSet.equals(EXCLUDE_DEFAULT)?EXCLUDE_DEFAULT:filterByPatterns(fileNames, excludeSet);
 
@@ -192,6 +1298,9 @@ private Path destinationDir;
 
 	static final Set<String> INCLUDE_DEFAULT=Set.of("*");
 	static final Set<String> EXCLUDE_DEFAULT=Set.of();
+
+	// compiled wildcard patterns -- shared by all the jobs of the JVM, see BatchZipper
+	private static final Map<String, Pattern> compiledPatterns = new ConcurrentHashMap<>();
 	
 	/**
 	 * Filters a set of file names by matching them against a set of patterns.
@@ -208,16 +1317,22 @@ private Path destinationDir;
 	private static Set<String> filterByPatterns(Set<String> fileNames, Set<String> patterns) {
         return fileNames.stream()
                 .filter(fileName -> patterns.stream()
-                        .anyMatch(pattern -> {
-                            String adjustedPattern = (pattern.endsWith(".")
-                                    ? pattern.substring(0, pattern.length() - 1)
-                                    : pattern)
-                                    .replace(".", "\\.")
-                                    .replace("?", ".?")
-                                    .replace("*", ".*?");
-                            return Pattern.matches(adjustedPattern, fileName);
-                        }))
+                        .anyMatch(pattern -> compiled(pattern).matcher(fileName).matches()))
                 .collect(Collectors.toSet());
     }
 
+	/**
+	 * Returns the compiled regex of a wildcard pattern, 
+	 * compiling it on the first request only.
+	 */
+	static Pattern compiled(String pattern) {
+		return compiledPatterns.computeIfAbsent(pattern, p -> Pattern.compile(
+				(p.endsWith(".")
+						? p.substring(0, p.length() - 1)
+						: p)
+				.replace(".", "\\.")
+				.replace("?", ".?")
+				.replace("*", ".*?")));
+	}
+
 }
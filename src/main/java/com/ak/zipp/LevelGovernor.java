@@ -0,0 +1,126 @@
+package com.ak.zipp;
+
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+/**
+ * Picks the deflate level of each file entry, so a run finishes by its deadline with the
+ * best ratio it can -- {@link Switch#DEADLINE}.
+ *
+ * <p>The throughput of each level is measured as the run goes: the uncompressed bytes done
+ * over the wall-clock time, in windows of {@link #WINDOW_NANOS}, averaged per level. At the
+ * end of each window the rate still needed -- the bytes left over the time left -- is put
+ * against the level in use. A level short of it, with {@link #MARGIN} to spare, gives way to
+ * the next faster one; a level ahead of it by {@link #HEADROOM} moves on to the next better
+ * one, unless that one has been measured short already. Levels move a step at a time, so
+ * one odd window doesn't swing the run from 9 to 1.</p>
+ *
+ * <p>The levels chosen, and why, are kept for the run's {@link ZipResult}.</p>
+ */
+class LevelGovernor {
+
+	static final int START_LEVEL = 6;
+	static final long WINDOW_NANOS = 250_000_000L;
+	// the rate a level has to beat the needed rate by, to be kept
+	static final double MARGIN = 1.1;
+	// the rate a level has to beat the needed rate by, to try the next better one
+	static final double HEADROOM = 1.5;
+
+	private final long startNanos = System.nanoTime();
+	private final long deadlineNanos;
+	private final long totalBytes;
+	private final double[] rates = new double[Deflater.BEST_COMPRESSION+1];  // bytes/s per level, 0 if unmeasured
+	private final List<ZipResult.LevelChange> changes = new ArrayList<>();
+	private int level = START_LEVEL;
+	private long windowStart = startNanos, windowBytes;
+
+	/**
+	 * @param budget the time the run has, from now
+	 * @param totalBytes the uncompressed bytes the run is going to zip
+	 */
+	LevelGovernor(Duration budget, long totalBytes) {
+		this.deadlineNanos = startNanos + budget.toNanos();
+		this.totalBytes = totalBytes;
+		changes.add(new ZipResult.LevelChange(Duration.ZERO, 0, level,
+				String.format(Locale.ROOT, "start: %d bytes in %s, %s needed", totalBytes, budget, perSecond(totalBytes*1e9/Math.max(1, budget.toNanos())))));
+	}
+
+	/**
+	 * Parses the time a run has: seconds, or a number with {@code s}, {@code m} or
+	 * {@code h} -- or an ISO-8601 duration, like {@code PT1H30M}.
+	 */
+	static Duration parseBudget(String value) {
+		String v = value.trim().toUpperCase(Locale.ROOT);
+		try {
+			if (v.startsWith("P"))
+				return Duration.parse(v);
+			char unit = v.isEmpty() ? ' ' : v.charAt(v.length()-1);
+			return switch (unit) {
+			case 'S' -> Duration.ofSeconds(Long.parseLong(v.substring(0, v.length()-1)));
+			case 'M' -> Duration.ofMinutes(Long.parseLong(v.substring(0, v.length()-1)));
+			case 'H' -> Duration.ofHours(Long.parseLong(v.substring(0, v.length()-1)));
+			default -> Duration.ofSeconds(Long.parseLong(v));
+			};
+		} catch (NumberFormatException | DateTimeParseException e) {
+			throw new IllegalArgumentException("Invalid time ["+value+"] -- like 90, 90s, 30m, 2h or PT1H30M", e);
+		}
+	}
+
+	/** the level to deflate the next file entry at */
+	int level() {
+		return level;
+	}
+
+	/**
+	 * Takes the measure of an entry done, and -- at the end of a window -- picks the level of the next.
+	 *
+	 * @param entryName the entry just written
+	 * @param bytesDone the uncompressed bytes of the run done so far
+	 * @param entryBytes the uncompressed bytes of the entry just written
+	 */
+	void entryDone(String entryName, long bytesDone, long entryBytes) {
+		windowBytes += entryBytes;
+		long now = System.nanoTime();
+		if (now-windowStart<WINDOW_NANOS)
+			return;
+		double rate = windowBytes*1e9/(now-windowStart);
+		rates[level] = rates[level]==0 ? rate : (rates[level]+rate)/2;
+		windowStart = now;
+		windowBytes = 0;
+
+		long bytesLeft = totalBytes-bytesDone;
+		if (bytesLeft<=0)
+			return;
+		long timeLeft = deadlineNanos-now;
+		double needed = timeLeft<=0 ? Double.POSITIVE_INFINITY : bytesLeft*1e9/timeLeft;
+		if (level>Deflater.NO_COMPRESSION && rates[level]<needed*MARGIN)
+			change(now, bytesDone, level-1, timeLeft<=0
+					? "past the deadline, after "+entryName
+					: String.format(Locale.ROOT, "behind after %s: level %d does %s, %s needed",
+							entryName, level, perSecond(rates[level]), perSecond(needed)));
+		else if (level<Deflater.BEST_COMPRESSION && rates[level]>needed*HEADROOM
+				&& (rates[level+1]==0 || rates[level+1]>=needed*MARGIN))
+			change(now, bytesDone, level+1, String.format(Locale.ROOT, "ahead after %s: level %d does %s, %s needed",
+					entryName, level, perSecond(rates[level]), perSecond(needed)));
+	}
+
+	/** the levels chosen so far, the starting one first */
+	List<ZipResult.LevelChange> changes() {
+		return Collections.unmodifiableList(changes);
+	}
+
+	private void change(long now, long bytesDone, int to, String reason) {
+		level = to;
+		changes.add(new ZipResult.LevelChange(Duration.ofNanos(now-startNanos), bytesDone, to, reason));
+	}
+
+	private static String perSecond(double bytesPerSecond) {
+		return String.format(Locale.ROOT, "%.1f MiB/s", bytesPerSecond/(1024*1024));
+	}
+
+}
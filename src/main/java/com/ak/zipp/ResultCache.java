@@ -0,0 +1,89 @@
+package com.ak.zipp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Archives already produced, kept by the fingerprint of what they were made from --
+ * {@link Switch#CACHE}.
+ *
+ * <p>A run whose fingerprint is in the cache copies the cached archive instead of
+ * zipping; any other run stores its archive when it completes. The fingerprint covers
+ * the filtered source tree -- entry names, sizes and modification times -- and the
+ * switches that shape the archive, see {@link Fingerprint}.</p>
+ *
+ * <p>The cache is a folder of {@code <fingerprint>.zip} files, shared by every run
+ * pointing at it; nothing is ever evicted -- the folder can be cleared at any time.</p>
+ */
+class ResultCache {
+
+	static final Path DEFAULT_DIR = Paths.get(System.getProperty("user.home"), ".zipp", "cache");
+
+	private final Path dir;
+
+	ResultCache(Path dir) {
+		this.dir = dir;
+	}
+
+	/**
+	 * Returns the cached archive of a fingerprint, or {@code null} if there is none.
+	 */
+	Path lookup(String fingerprint) {
+		Path cached = dir.resolve(fingerprint+".zip");
+		return Files.isRegularFile(cached) ? cached : null;
+	}
+
+	/**
+	 * Copies a completed archive into the cache. The copy is moved in place once
+	 * complete, so a concurrent lookup never sees half of it.
+	 */
+	void store(String fingerprint, Path archive) throws IOException {
+		Files.createDirectories(dir);
+		Path partial = Files.createTempFile(dir, fingerprint, ".partial");
+		try {
+			Files.copy(archive, partial, StandardCopyOption.REPLACE_EXISTING);
+			Files.move(partial, dir.resolve(fingerprint+".zip"),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(partial);
+		}
+	}
+
+	/**
+	 * SHA-256 of the lines fed to it -- each line a switch, or a source entry.
+	 */
+	static class Fingerprint {
+
+		// bumped whenever what goes into a fingerprint, or into the archive, changes
+		private static final String VERSION = "zipp-fingerprint-1";
+
+		private final MessageDigest digest;
+
+		Fingerprint() {
+			try {
+				digest = MessageDigest.getInstance("SHA-256");
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("SHA-256 is missing from this JVM", e);
+			}
+			line(VERSION);
+		}
+
+		Fingerprint line(String line) {
+			digest.update(line.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) '\n');
+			return this;
+		}
+
+		String hex() {
+			return HexFormat.of().formatHex(digest.digest());
+		}
+	}
+
+}
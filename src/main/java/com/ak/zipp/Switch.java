@@ -11,7 +11,15 @@ public enum Switch {
 	INCLUDE, EXCLUDE, // C, D, 
 	DEEPINCLUDE, DEEPEXCLUDE,  // E, F, 
 	NORECURSE,  // G
-	ZIPFILE;  // H	
+	ZIPFILE,  // H	
+	FILELIST,  // I
+	JOURNAL, RESUME,  // J, K
+	WATCH, APPEND,  // L, M
+	REPACK, COLLISION,  // N, O
+	REPRODUCIBLE, CACHE,  // P, Q
+	READLIMIT, WRITELIMIT, BACKOFF,  // R, S, T
+	PLAN, DIGEST,  // U, V
+	DEADLINE;  // W
 	
 	private static final Set<String> switchesDashed = Set.of(Switch.values()).stream()
 			.map(s -> "-" + s.name())
@@ -30,6 +38,18 @@ public enum Switch {
 						case "DEEPINCLUDE" -> "DI";
 						case "DEEPEXCLUDE" -> "DE";
 						case "NORECURSE" -> "NR";
+						case "FILELIST" -> "FL";
+						case "RESUME" -> "RS";
+						case "REPACK" -> "RP";
+						case "COLLISION" -> "CO";
+						case "REPRODUCIBLE" -> "RE";
+						case "CACHE" -> "CA";
+						case "READLIMIT" -> "RL";
+						case "WRITELIMIT" -> "WL";
+						case "BACKOFF" -> "BO";
+						case "PLAN" -> "PL";
+						case "DIGEST" -> "DG";
+						case "DEADLINE" -> "DL";
 						default -> name.substring(0, 1);
 						};
 					}
@@ -62,10 +82,38 @@ public enum Switch {
 		return null;
 	}
 
+	/**
+	 * whether the switch is a flag -- taking no arguments at all
+	 */
+	public boolean isNoArg() {
+		return switch (this) {
+		case NORECURSE, JOURNAL, RESUME, APPEND, REPRODUCIBLE, BACKOFF, PLAN -> true;
+		default -> false;
+		};
+	}
+
+	/**
+	 * whether the argument may be left out -- the switch is kept, with its default, if it is
+	 */
+	public boolean isOptionalArg() {
+		return switch (this) {
+		case WATCH, CACHE, DIGEST -> true;
+		default -> false;
+		};
+	}
+
 	public boolean isMultiValued() {  // hard-coding of a kind. but don't mind. 
-		if (this.name().endsWith("CLUDE"))
+		if (this.name().endsWith("CLUDE") || this==REPACK || this==SRCDIR)
 			return true; 
 		return false; 
 	}
 
+	/**
+	 * whether the arguments are plain file names -- patterns, or the zip file's name -- 
+	 * that can NOT carry path info
+	 */
+	public boolean takesFileNamesOnly() {
+		return this.name().endsWith("CLUDE") || this==ZIPFILE;
+	}
+
 }
\ No newline at end of file
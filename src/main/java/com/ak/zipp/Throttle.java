@@ -0,0 +1,221 @@
+package com.ak.zipp;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Paces the reads and writes of a job, so that archiving on a busy host leaves it
+ * disk bandwidth -- {@link Switch#READLIMIT}, {@link Switch#WRITELIMIT} and {@link Switch#BACKOFF}.
+ *
+ * <p>Each limit is a token bucket: the bytes moved are taken from it, and a read or write
+ * that overdraws it sleeps until the debt is paid off at the set rate. The bucket holds
+ * {@link #BURST_NANOS} worth of bytes, so short bursts go through at full speed.</p>
+ *
+ * <p>With back-off, the time each read or write takes is watched as well. When it rises
+ * well over its usual level -- other workloads competing for the disk -- the job pauses
+ * after each of them, for longer while the latency stays up, and less once it is down.</p>
+ *
+ * <p>The pauses are slept in slices of at most {@link #SLICE_NANOS}, checking for 
+ * cancellation before each -- so a cancelled job stops within a slice, not after its debt.</p>
+ */
+class Throttle {
+
+	// how much of the rate may go in one burst
+	static final long BURST_NANOS = 100_000_000L;
+	// the longest a pause sleeps without checking for cancellation
+	static final long SLICE_NANOS = 50_000_000L;
+
+	static final Throttle NONE = new Throttle(0, 0, false);
+
+	private final TokenBucket readBucket;
+	private final TokenBucket writeBucket;
+	private final Backoff readBackoff;
+	private final Backoff writeBackoff;
+	private final Runnable checkCancelled;
+
+	/**
+	 * @param readBytesPerSecond the read limit, or 0 for none
+	 * @param writeBytesPerSecond the write limit, or 0 for none
+	 * @param backoff whether to back off when the I/O latency rises
+	 */
+	Throttle(long readBytesPerSecond, long writeBytesPerSecond, boolean backoff) {
+		this(readBytesPerSecond, writeBytesPerSecond, backoff, () -> {});
+	}
+
+	/**
+	 * @param checkCancelled throws if the job paced is cancelled -- like {@link ZipJob#checkCancelled()}
+	 */
+	Throttle(long readBytesPerSecond, long writeBytesPerSecond, boolean backoff, Runnable checkCancelled) {
+		this.checkCancelled = checkCancelled;
+		readBucket = readBytesPerSecond>0 ? new TokenBucket(readBytesPerSecond) : null;
+		writeBucket = writeBytesPerSecond>0 ? new TokenBucket(writeBytesPerSecond) : null;
+		readBackoff = backoff ? new Backoff() : null;
+		writeBackoff = backoff ? new Backoff() : null;
+	}
+
+	boolean isReadLimited() {
+		return readBucket!=null || readBackoff!=null;
+	}
+
+	/**
+	 * Wraps a source stream in the read limits -- or returns it as it is, if there are none.
+	 */
+	InputStream reading(InputStream in) {
+		if (!isReadLimited())
+			return in;
+		return new FilterInputStream(in) {
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				long start = System.nanoTime();
+				int n = super.read(b, off, len);
+				paced(n, System.nanoTime()-start, readBucket, readBackoff);
+				return n;
+			}
+
+			@Override
+			public int read() throws IOException {
+				long start = System.nanoTime();
+				int c = super.read();
+				paced(c<0 ? -1 : 1, System.nanoTime()-start, readBucket, readBackoff);
+				return c;
+			}
+		};
+	}
+
+	/**
+	 * Wraps an archive stream in the write limits -- or returns it as it is, if there are none.
+	 */
+	OutputStream writing(OutputStream out) {
+		if (writeBucket==null && writeBackoff==null)
+			return out;
+		return new FilterOutputStream(out) {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				long start = System.nanoTime();
+				out.write(b, off, len);
+				paced(len, System.nanoTime()-start, writeBucket, writeBackoff);
+			}
+
+			@Override
+			public void write(int b) throws IOException {
+				long start = System.nanoTime();
+				out.write(b);
+				paced(1, System.nanoTime()-start, writeBucket, writeBackoff);
+			}
+		};
+	}
+
+	private void paced(long bytes, long nanos, TokenBucket bucket, Backoff backoff) throws IOException {
+		if (bytes<=0)
+			return;
+		long pause = bucket!=null ? bucket.take(bytes) : 0;
+		if (backoff!=null)
+			pause = Math.max(pause, backoff.pauseAfter(nanos));
+		sleep(pause);
+	}
+
+	private void sleep(long nanos) throws InterruptedIOException {
+		for (long left=nanos; left>0; left-=SLICE_NANOS) {
+			checkCancelled.run();
+			long slice = Math.min(left, SLICE_NANOS);
+			try {
+				Thread.sleep(slice/1_000_000, (int) (slice%1_000_000));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while throttled");
+			}
+		}
+	}
+
+	private static final Pattern RATE = Pattern.compile("(\\d+)([KMG]?)B?(/S)?", Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * Parses a rate in bytes per second -- e.g. {@code 500K}, {@code 20M} or {@code 1G},
+	 * in multiples of 1024.
+	 *
+	 * @throws IllegalArgumentException if it is no such rate, or too large for a {@code long}
+	 */
+	static long parseRate(String rate) {
+		Matcher m = RATE.matcher(rate.trim());
+		if (!m.matches() || m.group(1).matches("0+"))
+			throw new IllegalArgumentException("Invalid rate ["+rate+"] -- bytes per second, like 500K, 20M or 1G");
+		long unit = switch (m.group(2).toUpperCase()) {
+		case "K" -> 1L << 10;
+		case "M" -> 1L << 20;
+		case "G" -> 1L << 30;
+		default -> 1;
+		};
+		try {
+			return Math.multiplyExact(Long.parseLong(m.group(1)), unit);
+		} catch (NumberFormatException | ArithmeticException e) {
+			throw new IllegalArgumentException("Rate ["+rate+"] is too large -- at most "+Long.MAX_VALUE+" bytes per second");
+		}
+	}
+
+	/**
+	 * Bytes allowed at a fixed rate. It may be overdrawn -- the debt is what the
+	 * taker sleeps off.
+	 */
+	static class TokenBucket {
+
+		private final long bytesPerSecond;
+		private final double capacity;
+		private double tokens;
+		private long refilled = System.nanoTime();
+
+		TokenBucket(long bytesPerSecond) {
+			this.bytesPerSecond = bytesPerSecond;
+			this.capacity = Math.max(1, (double) bytesPerSecond * BURST_NANOS / 1e9);
+			this.tokens = capacity;
+		}
+
+		/**
+		 * Takes the bytes moved, and returns how long to sleep to stay within the rate.
+		 */
+		synchronized long take(long bytes) {
+			long now = System.nanoTime();
+			tokens = Math.min(capacity, tokens + (now-refilled) * bytesPerSecond / 1e9);
+			refilled = now;
+			tokens -= bytes;
+			return tokens>=0 ? 0 : (long) (-tokens * 1e9 / bytesPerSecond);
+		}
+	}
+
+	/**
+	 * Tells how long to pause after an operation, going by how its latency
+	 * compares to the usual one.
+	 */
+	static class Backoff {
+
+		// a latency this many times the usual one counts as risen
+		static final double RISE = 2.0;
+		// latencies under this never count as risen -- cache hits, mostly
+		static final long FLOOR_NANOS = 1_000_000L;
+		// the longest pause, in multiples of the operation's own time
+		static final double MAX_FACTOR = 8.0;
+
+		private double usual;  // slow moving average -- the latency the disk normally shows
+		private double recent;  // fast moving average
+		private double factor;
+
+		synchronized long pauseAfter(long nanos) {
+			if (usual==0)
+				usual = recent = nanos;
+			recent += (nanos-recent) * 0.3;
+			boolean risen = recent > RISE*Math.max(usual, FLOOR_NANOS);
+			if (risen)
+				factor = factor==0 ? 0.5 : Math.min(MAX_FACTOR, factor*2);
+			else factor = factor<0.1 ? 0 : factor/2;
+			// a lasting rise becomes the norm -- slowly, so a busy spell is backed off first
+			usual += (nanos-usual) * (risen ? 0.005 : 0.02);
+			return (long) (factor*nanos);
+		}
+	}
+
+}
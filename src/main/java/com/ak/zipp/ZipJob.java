@@ -0,0 +1,187 @@
+package com.ak.zipp;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Handle of an asynchronously running zipping -- see {@link DirectoryZipper#submit(String[])}.
+ *
+ * <p>The {@link #result()} completes once the archive is fully written. It completes 
+ * exceptionally with a {@link CancellationException} if the job was cancelled, or with 
+ * the cause of the failure otherwise. In both cases the partial archive is deleted 
+ * before the result completes.</p>
+ *
+ * <p>Progress listeners are called on the zipping thread, at most every 
+ * {@link #REPORT_INTERVAL_NANOS}, and once more when the job completes successfully.</p>
+ */
+public class ZipJob {
+
+	static final long REPORT_INTERVAL_NANOS = 100_000_000L;
+	long reportIntervalNanos = REPORT_INTERVAL_NANOS;  // tests report more often
+	// the time constant of the throughput's moving average -- the rate of the last few seconds
+	static final long RATE_WINDOW_NANOS = 5_000_000_000L;
+
+	private final CompletableFuture<ZipResult> result = new CompletableFuture<>();
+	private final List<Consumer<ZipProgress>> listeners = new CopyOnWriteArrayList<>();
+	private volatile boolean cancelled;
+	private final List<Runnable> cancelActions = new CopyOnWriteArrayList<>();
+
+	private final AtomicLong entriesDone = new AtomicLong();
+	private final AtomicLong bytesDone = new AtomicLong();
+	private volatile long totalEntries = -1;
+	private volatile long totalBytes = -1;
+	private volatile long startNanos;
+	private volatile long lastReportNanos;
+	private volatile RecentRate recentRate;
+
+	public CompletableFuture<ZipResult> result() {
+		return result;
+	}
+
+	public ZipJob onProgress(Consumer<ZipProgress> listener) {
+		listeners.add(listener);
+		return this;
+	}
+
+	/**
+	 * Asks the job to stop. It stops at the next entry, or the next buffer-full 
+	 * of a large file -- and then deletes the partial archive.
+	 */
+	public void cancel() {
+		cancelled = true;
+		for (Runnable action : cancelActions)
+			action.run();
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	public ZipProgress progress() {
+		long entries = entriesDone.get();
+		long bytes = bytesDone.get();
+		RecentRate recent = recentRate;
+		double rate = recent==null ? 0 : recent.update(System.nanoTime(), bytes);
+
+		Duration eta = null;
+		if (totalBytes>0 && rate>0)
+			eta = Duration.ofMillis((long) (Math.max(0, totalBytes-bytes)*1000/rate));
+		else if (totalBytes==0)
+			eta = Duration.ZERO;
+		return new ZipProgress(entries, bytes, rate, totalEntries, totalBytes, eta);
+	}
+
+	/**
+	 * Runs {@code action} when the job is cancelled -- right away if it is already. 
+	 * For whoever holds the job before it runs, like {@link ZipJobScheduler}'s queues.
+	 */
+	void whenCancelled(Runnable action) {
+		cancelActions.add(action);
+		if (cancelled)
+			action.run();
+	}
+
+	//// called by the zipping thread
+
+	void started() {
+		startNanos = lastReportNanos = System.nanoTime();
+		recentRate = new RecentRate(startNanos);
+	}
+
+	void preScanned(long entries, long bytes) {
+		totalEntries = entries;
+		totalBytes = bytes;
+	}
+
+	void checkCancelled() {
+		if (cancelled)
+			throw new CancellationException("Zip job cancelled");
+	}
+
+	void entryDone() {
+		entriesDone.incrementAndGet();
+		maybeReport();
+	}
+
+	void bytesDone(long n) {
+		bytesDone.addAndGet(n);
+		maybeReport();
+	}
+
+	void completed(ZipResult zipResult) {
+		report();
+		result.complete(zipResult);
+	}
+
+	void failed(Throwable t) {
+		result.completeExceptionally(t);
+	}
+
+	Duration elapsed() {
+		return Duration.ofNanos(System.nanoTime()-startNanos);
+	}
+
+	long entries() {
+		return entriesDone.get();
+	}
+
+	long bytes() {
+		return bytesDone.get();
+	}
+
+	private void maybeReport() {
+		if (listeners.isEmpty())
+			return;
+		long now = System.nanoTime();
+		if (now-lastReportNanos<reportIntervalNanos)
+			return;
+		lastReportNanos = now;
+		report();
+	}
+
+	private void report() {
+		if (listeners.isEmpty())
+			return;
+		ZipProgress p = progress();
+		for (Consumer<ZipProgress> listener : listeners)
+			listener.accept(p);
+	}
+
+	/**
+	 * The throughput of the recent past, for the progress and its ETA -- so a job that slows 
+	 * down, or speeds up, shows it within seconds, not diluted by all it did before.
+	 *
+	 * <p>An exponentially weighted moving average of the rates between samples, at least 
+	 * {@link #REPORT_INTERVAL_NANOS} apart. Each sample weighs by the time it covers, with 
+	 * a time constant of {@link #RATE_WINDOW_NANOS} -- however often the progress is asked for. 
+	 * Until the first sample, it is the average since the start.</p>
+	 */
+	static final class RecentRate {
+
+		private long sampleNanos;
+		private long sampleBytes;
+		private double rate = -1;
+
+		RecentRate(long startNanos) {
+			sampleNanos = startNanos;
+		}
+
+		synchronized double update(long nowNanos, long bytes) {
+			long interval = nowNanos-sampleNanos;
+			if (interval<REPORT_INTERVAL_NANOS)
+				return rate>=0 ? rate : interval<=0 ? 0 : (bytes-sampleBytes)*1e9/interval;
+			double sample = (bytes-sampleBytes)*1e9/interval;
+			double weight = 1-Math.exp(-(double) interval/RATE_WINDOW_NANOS);
+			rate = rate<0 ? sample : rate+weight*(sample-rate);
+			sampleNanos = nowNanos;
+			sampleBytes = bytes;
+			return rate;
+		}
+	}
+
+}
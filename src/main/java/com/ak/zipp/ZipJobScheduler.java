@@ -0,0 +1,562 @@
+package com.ak.zipp;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs the zip jobs of many tenants on one bounded pool of workers -- for when
+ * {@link ZippApplication} serves as a shared archiving service.
+ *
+ * <p>Each tenant has a queue of its own. A free worker takes the next job of the tenant
+ * served the fewest bytes so far, so a tenant submitting many jobs doesn't starve one
+ * submitting few. A tenant coming back after being idle starts level with the least served
+ * tenant waiting -- it doesn't bring along credit saved up while idle. Within a tenant,
+ * jobs go by priority, then deadline, then size, smallest first.</p>
+ *
+ * <p>Jobs are sized once submitted, by {@link DirectoryZipper#plan(String[])} -- the same
+ * traversal the job will make -- on a small pool of planner threads, so submitting doesn't
+ * wait for the traversal. A tenant's jobs are sized one at a time, in turn with the other
+ * tenants', so a tree slow to traverse holds up only the later jobs of its own tenant.
+ * A job that would overflow the queue is turned down by
+ * {@code submit}; one larger than the job limit, or that would overflow the queued bytes,
+ * or whose estimated duration already misses its deadline, fails with a
+ * {@link RejectedExecutionException} once sized. A queued job that can no longer finish by
+ * its deadline -- by the estimate -- fails with a {@link TimeoutException} instead of
+ * starting, and a cancelled one leaves the queue at once.
+ * File lists, repacks, appends and resumes can't be planned; they count as large jobs,
+ * of {@code small-job-bytes} for the fair share and the queue limit.</p>
+ *
+ * <p>Under overload small jobs don't get stuck behind huge ones: large jobs get all the
+ * workers but one, small jobs of a tenant overtake its large ones while those wait for
+ * a worker, and small jobs are admitted even when the queued bytes are over their limit.</p>
+ *
+ * <p>The limits are the {@code zipp.scheduler.*} properties, 0 meaning no limit;
+ * the workers default to the number of available processors.</p>
+ */
+@Component
+public class ZipJobScheduler implements DisposableBean {
+
+	// the switches whose jobs DirectoryZipper#plan can't size
+	private static final Set<Switch> UNPLANNED = EnumSet.of(Switch.FILELIST, Switch.REPACK, Switch.APPEND, Switch.RESUME);
+	// what an empty job costs its tenant, so many tiny jobs aren't free
+	static final long MIN_JOB_COST_BYTES = 64 * 1024;
+	// the jobs sized at once, at most -- traversals are bound by the file system more than by the processors
+	static final int PLANNERS = 4;
+
+	private static final Comparator<Scheduled> ORDER = Comparator
+			.comparingInt((Scheduled s) -> -s.priority)
+			.thenComparing((Scheduled s) -> s.deadline, Comparator.nullsLast(Comparator.naturalOrder()))
+			.thenComparingLong(s -> s.estimatedBytes<0 ? Long.MAX_VALUE : s.estimatedBytes)
+			.thenComparingLong(s -> s.id);
+
+	private final int workers;
+	private final long smallJobBytes;
+	private final long maxJobBytes;
+	private final int maxQueuedJobs;
+	private final long maxQueuedBytes;
+	private final ExecutorService pool;
+	// sizes the jobs submitted -- one of each tenant at a time
+	private final ExecutorService planner;
+
+	// guarded by this
+	private final Map<String, Tenant> tenants = new TreeMap<>();
+	private final Set<Scheduled> running = new LinkedHashSet<>();
+	// the admissions waiting to size their job, per tenant with any -- the first one being sized
+	private final Map<String, ArrayDeque<Runnable>> sizing = new HashMap<>();
+	private long nextId;
+	private int planning, queuedJobs, runningLarge;
+	private long queuedBytes;
+	private long started, waitNanos, maxWaitNanos;
+	private long completed, completedBytes, completedNanos;
+	private long rejected, expired;
+	private boolean shutDown;
+
+	/**
+	 * @param workers the jobs run at once, or 0 for the number of available processors
+	 * @param smallJobBytes the input bytes up to which a job is small
+	 * @param maxJobBytes the input bytes of the largest job admitted, or 0
+	 * @param maxQueuedJobs the jobs waiting for a worker, at most, or 0
+	 * @param maxQueuedBytes the input bytes of the large jobs waiting for a worker, at most, or 0
+	 */
+	public ZipJobScheduler(
+			@Value("${zipp.scheduler.workers:0}") int workers,
+			@Value("${zipp.scheduler.small-job-bytes:67108864}") long smallJobBytes,
+			@Value("${zipp.scheduler.max-job-bytes:0}") long maxJobBytes,
+			@Value("${zipp.scheduler.max-queued-jobs:1000}") int maxQueuedJobs,
+			@Value("${zipp.scheduler.max-queued-bytes:0}") long maxQueuedBytes) {
+		this.workers = workers>0 ? workers : Runtime.getRuntime().availableProcessors();
+		this.smallJobBytes = smallJobBytes;
+		this.maxJobBytes = maxJobBytes;
+		this.maxQueuedJobs = maxQueuedJobs;
+		this.maxQueuedBytes = maxQueuedBytes;
+		AtomicInteger threads = new AtomicInteger();
+		this.pool = Executors.newFixedThreadPool(this.workers,
+				r -> {
+					Thread t = new Thread(r, "zipp-scheduled-"+threads.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				});
+		AtomicInteger planners = new AtomicInteger();
+		this.planner = Executors.newFixedThreadPool(PLANNERS,
+				r -> {
+					Thread t = new Thread(r, "zipp-planner-"+planners.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				});
+	}
+
+	/**
+	 * Queues a zipp command of {@code tenant}, with no priority and no deadline.
+	 *
+	 * @see #submit(String, String[], int, Instant)
+	 */
+	public ZipJob submit(String tenant, String[] args) {
+		return submit(tenant, args, 0, null);
+	}
+
+	/**
+	 * Queues a zipp command for {@code tenant} -- once a planner thread has sized it.
+	 *
+	 * @param priority the higher, the sooner the job runs among the jobs of its tenant
+	 * @param deadline when the job has to be done, or {@code null}
+	 * @return the job -- it completes exceptionally with a {@link RejectedExecutionException} 
+	 *         if admission control turns it down once sized, with the {@link IOException} if 
+	 *         the source tree can't be traversed for the estimate, and with a 
+	 *         {@link TimeoutException} if it waits too long to finish by the deadline
+	 * @throws IllegalArgumentException if {@code args} is no zipp command, or a
+	 *         {@link Switch#WATCH} one -- those never finish
+	 * @throws RejectedExecutionException if the scheduler is shut down, or the queue is full
+	 */
+	public ZipJob submit(String tenant, String[] args, int priority, Instant deadline) {
+		EnumMap<Switch, Set<String>> command = CommandParser.processCommand(args);
+		if (command==null)
+			throw new IllegalArgumentException("Not a zipp command: "+Arrays.toString(args));
+		if (command.containsKey(Switch.WATCH))
+			throw new IllegalArgumentException("A -WATCH job never finishes, and can't be scheduled");
+
+		Scheduled s;
+		synchronized (this) {
+			try {
+				if (shutDown)
+					throw new RejectedExecutionException("The scheduler is shut down");
+				if (maxQueuedJobs>0 && queuedJobs+planning>=maxQueuedJobs)
+					throw new RejectedExecutionException((queuedJobs+planning)+" jobs are queued already");
+			} catch (RejectedExecutionException e) {
+				rejected++;
+				throw e;
+			}
+
+			s = new Scheduled(nextId++, tenant, priority, deadline);
+			planning++;  // holds the job's place in the queue
+		}
+		// the file system is checked out of the lock
+		Runnable[] task = new Runnable[1];
+		try {
+			s.job = DirectoryZipper.submit(args, r -> task[0] = r, false);
+		} catch (RuntimeException e) {
+			synchronized (this) {
+				planning--;
+			}
+			throw e;
+		}
+		s.task = task[0];
+		s.job.whenCancelled(() -> cancelled(s));
+		boolean planned = UNPLANNED.stream().noneMatch(command::containsKey);
+		Runnable admission = () -> admit(s, planned ? args : null);
+		synchronized (this) {
+			if (!shutDown) {
+				ArrayDeque<Runnable> waiting = sizing.computeIfAbsent(tenant, k -> new ArrayDeque<>());
+				waiting.add(admission);
+				if (waiting.size()==1)
+					planner.execute(() -> sizeNext(tenant));
+				return s.job;
+			}
+			planning--;
+		}
+		s.job.failed(new CancellationException("The scheduler is shut down"));
+		return s.job;
+	}
+
+	/**
+	 * Sizes the next job of {@code tenant}, on a planner thread -- then hands the tenant's 
+	 * following job back to the pool, behind the other tenants' ones. Once shut down, the 
+	 * jobs left fail here at once.
+	 */
+	private void sizeNext(String tenant) {
+		while (true) {
+			Runnable admission;
+			synchronized (this) {
+				admission = sizing.get(tenant).peek();
+			}
+			admission.run();
+			synchronized (this) {
+				ArrayDeque<Runnable> waiting = sizing.get(tenant);
+				waiting.poll();
+				if (waiting.isEmpty()) {
+					sizing.remove(tenant);
+					return;
+				}
+				if (!shutDown) {
+					planner.execute(() -> sizeNext(tenant));
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sizes a submitted job, on a planner thread, and queues it -- unless admission 
+	 * control turns it down, or it was cancelled meanwhile.
+	 *
+	 * @param args the zipp command to plan, or {@code null} if it can't be planned
+	 */
+	private void admit(Scheduled s, String[] args) {
+		Throwable failure = null;
+		ZipPlan plan = null;
+		boolean skip;
+		synchronized (this) {
+			skip = shutDown || s.job.isCancelled();
+		}
+		if (args!=null && !skip)
+			try {
+				plan = DirectoryZipper.plan(args);
+			} catch (IOException | RuntimeException e) {
+				failure = e;
+			}
+
+		synchronized (this) {
+			planning--;
+			if (shutDown)
+				failure = new CancellationException("The scheduler is shut down");
+			else if (s.job.isCancelled())
+				failure = new CancellationException("Zip job cancelled");
+			else if (failure==null)
+				try {
+					s.sized(plan);
+					if (maxJobBytes>0 && s.estimatedBytes>maxJobBytes)
+						throw new RejectedExecutionException("A job of "+s.estimatedBytes+" bytes is over the limit of "+maxJobBytes);
+					if (maxQueuedBytes>0 && s.isLarge() && queuedBytes+s.cost()>maxQueuedBytes)
+						throw new RejectedExecutionException("A job of "+s.cost()+" bytes would overflow the "
+								+queuedBytes+" bytes queued already");
+					if (s.isLate(Instant.now()))
+						throw new RejectedExecutionException("The job is estimated to take "+s.estimatedDuration
+								+", and would miss its deadline");
+					enqueue(s);
+				} catch (RejectedExecutionException e) {
+					rejected++;
+					failure = e;
+				}
+		}
+		if (failure!=null) {
+			s.job.failed(failure);
+			return;
+		}
+		if (s.deadline!=null)
+			CompletableFuture.runAsync(this::dispatch, CompletableFuture.delayedExecutor(
+					Math.max(0, Duration.between(Instant.now(), s.latestStart()).toMillis()+1), TimeUnit.MILLISECONDS));
+		dispatch();
+	}
+
+	/**
+	 * Takes a cancelled job off its tenant's queue -- so it counts no more against the 
+	 * queue limits, nor for its tenant's share -- and fails it. A running job stops by itself.
+	 */
+	private void cancelled(Scheduled s) {
+		synchronized (this) {
+			Tenant t = tenants.get(s.tenant);
+			if (t==null || !t.queue.remove(s))
+				return;
+			queuedJobs--;
+			queuedBytes -= s.cost();
+			if (t.isIdle())
+				tenants.remove(s.tenant);
+		}
+		s.job.failed(new CancellationException("Zip job cancelled"));
+	}
+
+	/**
+	 * How the scheduler is doing -- queues, waits and throughput.
+	 */
+	public synchronized Stats stats() {
+		long now = System.nanoTime();
+		Map<String, Integer> queuedByTenant = new TreeMap<>();
+		List<JobStats> jobs = new ArrayList<>();
+		for (Scheduled s : running)
+			jobs.add(s.stats(now));
+		for (Tenant t : tenants.values()) {
+			if (!t.queue.isEmpty())
+				queuedByTenant.put(t.name, t.queue.size());
+			for (Scheduled s : t.queue)
+				jobs.add(s.stats(now));
+		}
+		return new Stats(queuedJobs, queuedBytes, queuedByTenant, running.size(), started,
+				Duration.ofNanos(started==0 ? 0 : waitNanos/started), Duration.ofNanos(maxWaitNanos),
+				completed, completedNanos==0 ? 0 : completedBytes*1e9/completedNanos,
+				rejected, expired, jobs);
+	}
+
+	/**
+	 * Fails the queued jobs -- and the ones being sized -- with a {@link CancellationException}, 
+	 * and cancels the running ones.
+	 */
+	@Override
+	public void destroy() {
+		List<Scheduled> queued = new ArrayList<>();
+		synchronized (this) {
+			shutDown = true;
+			for (Tenant t : tenants.values())
+				queued.addAll(t.queue);
+			tenants.clear();
+			queuedJobs = 0;
+			queuedBytes = 0;
+			running.forEach(s -> s.job.cancel());
+		}
+		for (Scheduled s : queued)
+			s.job.failed(new CancellationException("The scheduler is shut down"));
+		planner.shutdown();
+		pool.shutdown();
+	}
+
+	private void enqueue(Scheduled s) {
+		Tenant t = tenants.get(s.tenant);
+		if (t==null || t.queue.isEmpty()) {
+			// back from idle -- level with the least served tenant waiting, no better
+			long level = tenants.values().stream()
+					.filter(other -> !other.queue.isEmpty())
+					.mapToLong(other -> other.served)
+					.min().orElse(0);
+			if (t==null)
+				tenants.put(s.tenant, t = new Tenant(s.tenant));
+			t.served = Math.max(t.served, level);
+		}
+		t.queue.add(s);
+		queuedJobs++;
+		queuedBytes += s.cost();
+	}
+
+	/**
+	 * Drops the queued jobs past their deadline, and starts jobs while there are free workers.
+	 */
+	private void dispatch() {
+		List<Scheduled> dropped = new ArrayList<>();
+		synchronized (this) {
+			if (shutDown)
+				return;
+			Instant now = Instant.now();
+			for (Tenant t : tenants.values())
+				for (Iterator<Scheduled> it = t.queue.iterator(); it.hasNext(); ) {
+					Scheduled s = it.next();
+					if (s.isLate(now)) {
+						it.remove();
+						queuedJobs--;
+						queuedBytes -= s.cost();
+						expired++;
+						dropped.add(s);
+					}
+				}
+			Scheduled next;
+			while (running.size()<workers && (next=next())!=null)
+				start(next);
+			tenants.values().removeIf(Tenant::isIdle);
+		}
+		for (Scheduled s : dropped)
+			s.job.failed(new TimeoutException("Zip job of "+s.tenant+" can't finish by its deadline "+s.deadline));
+	}
+
+	/**
+	 * The job to start next: the first of the least served tenant -- the first small one,
+	 * while large jobs take all the workers but one.
+	 */
+	private Scheduled next() {
+		boolean largeAllowed = workers==1 || runningLarge<workers-1;
+		Tenant chosen = null;
+		Scheduled next = null;
+		for (Tenant t : tenants.values()) {
+			Scheduled first = null;
+			for (Scheduled s : t.queue)
+				if (largeAllowed || !s.isLarge()) {
+					first = s;
+					break;
+				}
+			if (first!=null && (chosen==null || t.served<chosen.served)) {
+				chosen = t;
+				next = first;
+			}
+		}
+		return next;
+	}
+
+	private void start(Scheduled s) {
+		Tenant t = tenants.get(s.tenant);
+		t.queue.remove(s);
+		t.running++;
+		t.served += s.cost();
+		queuedJobs--;
+		queuedBytes -= s.cost();
+		running.add(s);
+		if (s.isLarge())
+			runningLarge++;
+
+		s.startedNanos = System.nanoTime();
+		long waited = s.startedNanos-s.queuedNanos;
+		started++;
+		waitNanos += waited;
+		maxWaitNanos = Math.max(maxWaitNanos, waited);
+		pool.execute(() -> {
+			try {
+				s.task.run();
+			} finally {
+				finished(s);
+			}
+		});
+	}
+
+	private void finished(Scheduled s) {
+		synchronized (this) {
+			running.remove(s);
+			if (s.isLarge())
+				runningLarge--;
+			Tenant t = tenants.get(s.tenant);
+			if (t!=null) {
+				t.running--;
+				if (t.isIdle())
+					tenants.remove(s.tenant);
+			}
+			CompletableFuture<ZipResult> result = s.job.result();
+			if (result.isDone() && !result.isCompletedExceptionally()) {
+				ZipResult r = result.join();
+				completed++;
+				completedBytes += r.bytes();
+				completedNanos += r.elapsed().toNanos();
+			}
+		}
+		dispatch();
+	}
+
+	private static final class Tenant {
+		final String name;
+		final TreeSet<Scheduled> queue = new TreeSet<>(ORDER);
+		int running;
+		long served;  // the cost of the jobs started, from the level it last came back at
+
+		Tenant(String name) {
+			this.name = name;
+		}
+
+		boolean isIdle() {
+			return queue.isEmpty() && running==0;
+		}
+	}
+
+	private final class Scheduled {
+		final long id;
+		final String tenant;
+		final int priority;
+		final Instant deadline;
+		final long queuedNanos = System.nanoTime();
+		// set once sized, before the job is queued
+		long estimatedBytes;
+		Duration estimatedDuration;
+		ZipJob job;
+		Runnable task;
+		long startedNanos;
+
+		Scheduled(long id, String tenant, int priority, Instant deadline) {
+			this.id = id;
+			this.tenant = tenant;
+			this.priority = priority;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * @param plan the job's plan, or {@code null} if it can't be planned
+		 */
+		void sized(ZipPlan plan) {
+			estimatedBytes = plan==null ? -1 : plan.inputBytes();
+			estimatedDuration = plan==null ? Duration.ZERO : plan.estimatedDuration();
+		}
+
+		Instant latestStart() {
+			return deadline.minus(estimatedDuration);
+		}
+
+		boolean isLate(Instant now) {
+			return deadline!=null && now.isAfter(latestStart());
+		}
+
+		boolean isLarge() {
+			return estimatedBytes<0 || estimatedBytes>smallJobBytes;
+		}
+
+		long cost() {
+			return estimatedBytes<0 ? smallJobBytes : Math.max(estimatedBytes, MIN_JOB_COST_BYTES);
+		}
+
+		JobStats stats(long now) {
+			boolean isRunning = startedNanos!=0;
+			return new JobStats(id, tenant, priority, deadline, estimatedBytes, isRunning,
+					Duration.ofNanos((isRunning ? startedNanos : now)-queuedNanos),
+					isRunning ? job.progress().bytesPerSecond() : 0);
+		}
+	}
+
+	/**
+	 * A queued or running job.
+	 *
+	 * @param estimatedBytes the input bytes the job will zip, or {@code -1} if it couldn't be planned
+	 * @param waited the time the job has waited, or waited until it started
+	 * @param bytesPerSecond the throughput of the job over the last few seconds, or 0 if it hasn't started
+	 */
+	public record JobStats(long id, String tenant, int priority, Instant deadline, long estimatedBytes,
+			boolean running, Duration waited, double bytesPerSecond) {
+	}
+
+	/**
+	 * A snapshot of the scheduler.
+	 *
+	 * @param queued the jobs waiting for a worker
+	 * @param queuedBytes what the queued jobs cost -- their estimated input bytes
+	 * @param queuedByTenant the jobs waiting, per tenant with any
+	 * @param running the jobs running
+	 * @param started the jobs started so far
+	 * @param averageWait the average time the jobs started waited
+	 * @param maxWait the longest time a job started waited
+	 * @param completed the jobs completed successfully so far
+	 * @param bytesPerSecond the throughput of the jobs completed, overall
+	 * @param rejected the jobs turned down by admission control
+	 * @param expired the jobs failed for not starting by their deadline
+	 * @param jobs the jobs running, then the jobs waiting
+	 */
+	public record Stats(int queued, long queuedBytes, Map<String, Integer> queuedByTenant, int running,
+			long started, Duration averageWait, Duration maxWait, long completed, double bytesPerSecond,
+			long rejected, long expired, List<JobStats> jobs) {
+	}
+
+}
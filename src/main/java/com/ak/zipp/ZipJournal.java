@@ -0,0 +1,155 @@
+package com.ak.zipp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checkpoint journal of an archive being written -- kept next to it as {@code <zipfile>.journal}.
+ *
+ * <p>It records the entries fully written to the archive, with their offsets, one line
+ * per entry. The lines are written at checkpoints -- every {@link #CHECKPOINT_INTERVAL_NANOS},
+ * after the archive itself is forced to disk -- so the journal never names an entry
+ * whose bytes could be lost. A run that dies loses the entries since the last
+ * checkpoint at most; {@link Switch#RESUME} truncates the archive to the end of
+ * the last journaled entry -- and the journal to the end of its line -- and carries on 
+ * from there.</p>
+ *
+ * <p>Line format, tab separated: offset, end, method, flags, DOS time, CRC,
+ * compressed size, size, name -- the name with {@code \} and newlines escaped.</p>
+ */
+class ZipJournal implements Closeable {
+
+	static final long CHECKPOINT_INTERVAL_NANOS = 1_000_000_000L;
+
+	private final FileChannel journal;
+	private final ZipWriter writer;
+	private final FileChannel archive;
+	private final StringBuilder pending = new StringBuilder();
+	private long lastCheckpoint = System.nanoTime();
+
+	/**
+	 * Opens -- or creates -- the journal of the archive written by {@code writer} to {@code archive}.
+	 */
+	ZipJournal(Path journalPath, ZipWriter writer, FileChannel archive) throws IOException {
+		this.journal = FileChannel.open(journalPath,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		this.writer = writer;
+		this.archive = archive;
+	}
+
+	static Path of(Path zipFilePath) {
+		return zipFilePath.resolveSibling(zipFilePath.getFileName()+".journal");
+	}
+
+	/**
+	 * Records a fully written entry -- in the journal file at the next checkpoint.
+	 */
+	void written(ZipWriter.Entry e) throws IOException {
+		pending.append(e.offset()).append('\t')
+		.append(e.end()).append('\t')
+		.append(e.method()).append('\t')
+		.append(e.flags()).append('\t')
+		.append(e.dosTime()).append('\t')
+		.append(e.crc()).append('\t')
+		.append(e.compressedSize()).append('\t')
+		.append(e.size()).append('\t')
+		.append(e.name().replace("\\", "\\\\").replace("\n", "\\n"))
+		.append('\n');
+		if (System.nanoTime()-lastCheckpoint>=CHECKPOINT_INTERVAL_NANOS)
+			checkpoint();
+	}
+
+	/**
+	 * Forces the archive to disk, then journals the entries written since the last checkpoint.
+	 */
+	void checkpoint() throws IOException {
+		lastCheckpoint = System.nanoTime();
+		if (pending.isEmpty())
+			return;
+		writer.flush();
+		archive.force(false);
+		ByteBuffer lines = ByteBuffer.wrap(pending.toString().getBytes(StandardCharsets.UTF_8));
+		while (lines.hasRemaining())
+			journal.write(lines);
+		journal.force(false);
+		pending.setLength(0);
+	}
+
+	/**
+	 * Closes the journal file, without a checkpoint.
+	 */
+	@Override
+	public void close() throws IOException {
+		journal.close();
+	}
+
+	/**
+	 * Reads the entries recorded in a journal, for a resumed run, and cuts the journal back 
+	 * to the end of the last one -- so the lines the run appends don't run on from a line 
+	 * cut short. A line cut short by a crash ends the list, as do a garbled line and entries 
+	 * that end past {@code archiveSize}.
+	 *
+	 * @throws NoSuchFileException if there is no journal
+	 */
+	static List<ZipWriter.Entry> resume(Path journalPath, long archiveSize) throws IOException {
+		List<ZipWriter.Entry> entries = new ArrayList<>();
+		long kept = read(journalPath, archiveSize, entries);
+		try (FileChannel journal = FileChannel.open(journalPath, StandardOpenOption.WRITE)) {
+			if (journal.size()>kept) {
+				journal.truncate(kept);
+				journal.force(false);
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * @return the bytes of the journal the entries read take up
+	 */
+	private static long read(Path journalPath, long archiveSize, List<ZipWriter.Entry> entries) throws IOException {
+		byte[] content = Files.readAllBytes(journalPath);
+		int from = 0;
+		for (int to=0; to<content.length; to++) {
+			if (content[to]!='\n')
+				continue;
+			String[] f = new String(content, from, to-from, StandardCharsets.UTF_8).split("\t", 9);
+			if (f.length<9)
+				break;
+			ZipWriter.Entry e;
+			try {
+				e = new ZipWriter.Entry(unescape(f[8]),
+						Integer.parseInt(f[2]), Integer.parseInt(f[3]), Long.parseLong(f[4]),
+						Long.parseLong(f[5]), Long.parseLong(f[6]), Long.parseLong(f[7]),
+						Long.parseLong(f[0]), Long.parseLong(f[1]));
+			} catch (NumberFormatException garbled) {
+				break;
+			}
+			if (e.end()>archiveSize)
+				break;
+			entries.add(e);
+			from = to+1;
+		}
+		return from;
+	}
+
+	private static String unescape(String name) {
+		StringBuilder sb = new StringBuilder(name.length());
+		for (int i=0; i<name.length(); i++) {
+			char c = name.charAt(i);
+			if (c=='\\' && i+1<name.length())
+				sb.append(name.charAt(++i)=='n' ? '\n' : name.charAt(i));
+			else sb.append(c);
+		}
+		return sb.toString();
+	}
+
+}
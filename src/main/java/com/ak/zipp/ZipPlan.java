@@ -0,0 +1,152 @@
+package com.ak.zipp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * What a run would zip, and what it would take -- the outcome of {@link Switch#PLAN}.
+ *
+ * <p>The counts are exact: they come from the same traversal and filtering as the real run.
+ * The output size and the duration are estimates, from compressing a sample of the files.</p>
+ *
+ * @param entries the entries the archive would have -- folders included
+ * @param files the file entries
+ * @param inputBytes the bytes of the files
+ * @param sampledFiles the files compressed for the estimates
+ * @param sampledBytes the bytes compressed for the estimates
+ * @param ratio the estimated compressed-to-input ratio of the file data
+ * @param estimatedBytes the estimated size of the archive
+ * @param estimatedDuration the estimated time of the real run
+ * @param planningTime the time the planning took
+ */
+public record ZipPlan(long entries, long files, long inputBytes,
+		int sampledFiles, long sampledBytes, double ratio,
+		long estimatedBytes, Duration estimatedDuration, Duration planningTime) {
+
+	/**
+	 * The plan as one JSON object, with the durations in milliseconds.
+	 */
+	public String toJson() {
+		return String.format(Locale.ROOT,
+				"{\"entries\":%d,\"files\":%d,\"inputBytes\":%d,"
+				+ "\"sampledFiles\":%d,\"sampledBytes\":%d,\"ratio\":%.4f,"
+				+ "\"estimatedBytes\":%d,\"estimatedMillis\":%d,\"planningMillis\":%d}",
+				entries, files, inputBytes, sampledFiles, sampledBytes, ratio,
+				estimatedBytes, estimatedDuration.toMillis(), planningTime.toMillis());
+	}
+
+	/**
+	 * Counts the entries met by a traversal, keeping a uniform sample of the files --
+	 * then compresses the sample, and makes the plan.
+	 */
+	static class Estimator {
+
+		// how many files are compressed for the estimates, at most
+		static final int SAMPLE_FILES = 256;
+		// how much of each sampled file is compressed, at most
+		static final int SAMPLE_CHUNK_BYTES = 64 * 1024;
+
+		// per entry: local header 30, central header 46, data descriptor 16 -- and the name twice
+		private static final int ENTRY_OVERHEAD = 30 + 46 + 16;
+		// end of central directory record
+		private static final int END_OVERHEAD = 22;
+
+		private final long start = System.nanoTime();
+		private final Random random = new Random(0);  // the same tree gets the same plan
+		private final List<Path> sample = new ArrayList<>(SAMPLE_FILES);
+		private final List<Long> sampleSizes = new ArrayList<>(SAMPLE_FILES);
+		private long entries, files, inputBytes, overhead = END_OVERHEAD;
+		// the files with content -- the ones the sample is drawn from
+		private long nonEmptyFiles;
+
+		void add(String zipEntryName, Path path, long size, boolean isDirectory) {
+			entries++;
+			overhead += ENTRY_OVERHEAD + 2L*zipEntryName.getBytes(StandardCharsets.UTF_8).length;
+			if (isDirectory)
+				return;
+			files++;
+			if (size==0)
+				return;  // nothing to read, nor to sample
+			nonEmptyFiles++;
+			inputBytes += size;
+			// reservoir sampling -- every file has the same chance to be in the sample
+			if (sample.size()<SAMPLE_FILES) {
+				sample.add(path);
+				sampleSizes.add(size);
+			} else {
+				long i = (long) (random.nextDouble() * nonEmptyFiles);
+				if (i<SAMPLE_FILES) {
+					sample.set((int) i, path);
+					sampleSizes.set((int) i, size);
+				}
+			}
+		}
+
+		/**
+		 * Compresses the start of each sampled file, and makes the plan. The ratio is
+		 * weighed by the size of the files, and the duration is the time of the traversal
+		 * plus the input at the sample's throughput -- no faster than the rate limits allow.
+		 *
+		 * @param throttle the pace of the reads of the sample
+		 * @param readLimit the read limit of the run, or 0
+		 * @param writeLimit the write limit of the run, or 0
+		 */
+		ZipPlan plan(Throttle throttle, long readLimit, long writeLimit) throws IOException {
+			long walked = System.nanoTime()-start;
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			byte[] in = new byte[SAMPLE_CHUNK_BYTES];
+			byte[] out = new byte[SAMPLE_CHUNK_BYTES + 1024];
+			long sampledBytes = 0, sampleStart = System.nanoTime();
+			double weighed = 0, weights = 0;
+			int sampledFiles = 0;
+			try {
+				for (int i=0; i<sample.size(); i++) {
+					int n;
+					try (InputStream stream = throttle.reading(Files.newInputStream(sample.get(i)))) {
+						n = stream.readNBytes(in, 0, in.length);
+					} catch (NoSuchFileException e) {
+						continue;  // gone since the traversal
+					}
+					if (n==0)
+						continue;
+					deflater.reset();
+					deflater.setInput(in, 0, n);
+					deflater.finish();
+					long compressed = 0;
+					while (!deflater.finished())
+						compressed += deflater.deflate(out);
+					sampledFiles++;
+					sampledBytes += n;
+					weighed += sampleSizes.get(i) * ((double) compressed / n);
+					weights += sampleSizes.get(i);
+				}
+			} finally {
+				deflater.end();
+			}
+			long sampleNanos = System.nanoTime()-sampleStart;
+
+			double ratio = weights>0 ? weighed/weights : 1;
+			long dataBytes = (long) Math.ceil(inputBytes * ratio);
+			long estimatedBytes = dataBytes + overhead;
+
+			double nanos = walked + (sampledBytes>0 ? (double) sampleNanos / sampledBytes * inputBytes : 0);
+			if (readLimit>0)
+				nanos = Math.max(nanos, 1e9 * inputBytes / readLimit);
+			if (writeLimit>0)
+				nanos = Math.max(nanos, 1e9 * estimatedBytes / writeLimit);
+			return new ZipPlan(entries, files, inputBytes, sampledFiles, sampledBytes, ratio,
+					estimatedBytes, Duration.ofNanos((long) nanos), Duration.ofNanos(System.nanoTime()-start));
+		}
+	}
+
+}
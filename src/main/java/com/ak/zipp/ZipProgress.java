@@ -0,0 +1,25 @@
+package com.ak.zipp;
+
+import java.time.Duration;
+
+/**
+ * A snapshot of how far a {@link ZipJob} has got.
+ *
+ * @param entriesDone the entries written so far -- folders included
+ * @param bytesDone the uncompressed bytes written so far
+ * @param bytesPerSecond the throughput of the last few seconds -- a moving average, which the ETA goes by
+ * @param totalEntries the entries the job will write, or {@code -1} if there was no pre-scan
+ * @param totalBytes the uncompressed bytes the job will write, or {@code -1} if there was no pre-scan
+ * @param eta the estimated time to completion, or {@code null} if there is no estimate (yet)
+ */
+public record ZipProgress(long entriesDone, long bytesDone, double bytesPerSecond,
+		long totalEntries, long totalBytes, Duration eta) {
+
+	@Override
+	public String toString() {
+		return entriesDone + (totalEntries<0 ? "" : "/"+totalEntries) + " entries, "
+				+ bytesDone + (totalBytes<0 ? "" : "/"+totalBytes) + " bytes, "
+				+ Math.round(bytesPerSecond/1024) + " KiB/s"
+				+ (eta==null ? "" : ", eta "+eta);
+	}
+}
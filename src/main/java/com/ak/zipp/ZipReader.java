@@ -0,0 +1,186 @@
+package com.ak.zipp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipException;
+
+/**
+ * Reads the central directory of an archive, and the raw -- still compressed -- entry data, 
+ * for {@link ZipWriter#addRaw(ZipWriter.Entry, InputStream)} to copy it as is.
+ *
+ * <p>The central directory fields {@link ZipWriter} doesn't write itself -- the file attributes, 
+ * extra fields and comments of other tools -- are kept as {@link ZipWriter.Foreign}, and 
+ * written back with the entry. An entry without any has none.</p>
+ */
+class ZipReader {
+
+	static final int END_SIZE = 22;
+	static final int ZIP64_LOCATOR_SIZE = 20;
+	static final int ZIP64_END_SIZE = 56;
+	static final int CENTRAL_HEADER_SIZE = 46;
+	static final int MAX_COMMENT = 0xFFFF;
+
+	/**
+	 * The entries of an archive, and where its central directory starts --
+	 * i.e. where the entry data ends.
+	 */
+	record CentralDirectory(List<ZipWriter.Entry> entries, long offset) {
+	}
+
+	/**
+	 * Reads the central directory of {@code archive}. The entries' {@code end} is the
+	 * start of the next entry in the file, or of the central directory for the last one.
+	 *
+	 * @throws ZipException if the end records or the central directory aren't found
+	 */
+	static CentralDirectory centralDirectory(FileChannel archive) throws IOException {
+		long size = archive.size();
+		int tailLength = (int) Math.min(size, END_SIZE + MAX_COMMENT);
+		ByteBuffer tail = ByteBuffer.allocate(tailLength).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(archive, tail, size-tailLength);
+
+		int end = -1;
+		for (int i=tailLength-END_SIZE; i>=0; i--)
+			if (Integer.toUnsignedLong(tail.getInt(i))==ZipWriter.END_SIG) {
+				end = i;
+				break;
+			}
+		if (end<0)
+			throw new ZipException("Not a zip archive -- no end of central directory record");
+
+		long count = Short.toUnsignedInt(tail.getShort(end+10));
+		long cdSize = Integer.toUnsignedLong(tail.getInt(end+12));
+		long cdOffset = Integer.toUnsignedLong(tail.getInt(end+16));
+		long endPosition = size-tailLength+end;
+		if (endPosition>=ZIP64_LOCATOR_SIZE) {
+			ByteBuffer locator = ByteBuffer.allocate(ZIP64_LOCATOR_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			readFully(archive, locator, endPosition-ZIP64_LOCATOR_SIZE);
+			if (Integer.toUnsignedLong(locator.getInt(0))==ZipWriter.ZIP64_LOCATOR_SIG) {
+				ByteBuffer zip64End = ByteBuffer.allocate(ZIP64_END_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+				readFully(archive, zip64End, locator.getLong(8));
+				if (Integer.toUnsignedLong(zip64End.getInt(0))!=ZipWriter.ZIP64_END_SIG)
+					throw new ZipException("Broken zip64 end of central directory record");
+				count = zip64End.getLong(32);
+				cdSize = zip64End.getLong(40);
+				cdOffset = zip64End.getLong(48);
+			}
+		}
+
+		ByteBuffer cd = ByteBuffer.allocate(Math.toIntExact(cdSize)).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(archive, cd, cdOffset);
+		List<ZipWriter.Entry> entries = new ArrayList<>();
+		int i = 0;
+		for (long n=0; n<count; n++) {
+			if (Integer.toUnsignedLong(cd.getInt(i))!=ZipWriter.CENTRAL_HEADER_SIG)
+				throw new ZipException("Broken central directory at entry "+n);
+			int versionMadeBy = Short.toUnsignedInt(cd.getShort(i+4));
+			int flags = Short.toUnsignedInt(cd.getShort(i+8));
+			int method = Short.toUnsignedInt(cd.getShort(i+10));
+			long dosTime = Integer.toUnsignedLong(cd.getInt(i+12));
+			long crc = Integer.toUnsignedLong(cd.getInt(i+16));
+			long compressedSize = Integer.toUnsignedLong(cd.getInt(i+20));
+			long entrySize = Integer.toUnsignedLong(cd.getInt(i+24));
+			int nameLength = Short.toUnsignedInt(cd.getShort(i+28));
+			int extraLength = Short.toUnsignedInt(cd.getShort(i+30));
+			int commentLength = Short.toUnsignedInt(cd.getShort(i+32));
+			int internalAttributes = Short.toUnsignedInt(cd.getShort(i+36));
+			long externalAttributes = Integer.toUnsignedLong(cd.getInt(i+38));
+			long offset = Integer.toUnsignedLong(cd.getInt(i+42));
+
+			byte[] name = new byte[nameLength];
+			cd.get(i+CENTRAL_HEADER_SIZE, name);
+
+			// the zip64 extra field holds the values saturated above, in this order -- the other fields are kept as they are
+			int x = i+CENTRAL_HEADER_SIZE+nameLength;
+			int extraEnd = x+extraLength;
+			ByteArrayOutputStream foreignExtra = new ByteArrayOutputStream();
+			while (x+4<=extraEnd) {
+				int id = Short.toUnsignedInt(cd.getShort(x));
+				int length = Math.min(Short.toUnsignedInt(cd.getShort(x+2)), extraEnd-x-4);
+				if (id==0x0001) {
+					int v = x+4;
+					if (entrySize==ZipWriter.ZIP64_MAGIC) { entrySize = cd.getLong(v); v += 8; }
+					if (compressedSize==ZipWriter.ZIP64_MAGIC) { compressedSize = cd.getLong(v); v += 8; }
+					if (offset==ZipWriter.ZIP64_MAGIC) offset = cd.getLong(v);
+				} else foreignExtra.write(cd.array(), x, 4+length);
+				x += 4+length;
+			}
+			byte[] comment = new byte[commentLength];
+			cd.get(extraEnd, comment);
+
+			// none, if there is nothing ZipWriter wouldn't write itself
+			ZipWriter.Foreign foreign = versionMadeBy>>8==0 && internalAttributes==0 && externalAttributes==0 
+					&& foreignExtra.size()==0 && commentLength==0 ? null
+					: new ZipWriter.Foreign(versionMadeBy, internalAttributes, externalAttributes, foreignExtra.toByteArray(), comment);
+			entries.add(new ZipWriter.Entry(new String(name, StandardCharsets.UTF_8), method, flags, dosTime,
+					crc, compressedSize, entrySize, offset, -1, foreign));
+			i = extraEnd+commentLength;
+		}
+
+		// each entry ends where the next one in the file starts
+		List<ZipWriter.Entry> byOffset = new ArrayList<>(entries);
+		byOffset.sort(Comparator.comparingLong(ZipWriter.Entry::offset));
+		Map<ZipWriter.Entry, Long> ends = new IdentityHashMap<>();
+		for (int k=0; k<byOffset.size(); k++)
+			ends.put(byOffset.get(k), k+1<byOffset.size() ? byOffset.get(k+1).offset() : cdOffset);
+		entries.replaceAll(e -> new ZipWriter.Entry(e.name(), e.method(), e.flags(), e.dosTime(),
+				e.crc(), e.compressedSize(), e.size(), e.offset(), ends.get(e), e.foreign()));
+
+		return new CentralDirectory(entries, cdOffset);
+	}
+
+	/**
+	 * Returns a stream of the compressed data of {@code e}, in {@code archive} -- 
+	 * {@code e.compressedSize()} bytes. It reads at its own position, not the channel's, 
+	 * so streams of several entries can be read at once, by several threads.
+	 */
+	static InputStream rawData(FileChannel archive, ZipWriter.Entry e) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(ZipWriter.LOCAL_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(archive, header, e.offset());
+		if (Integer.toUnsignedLong(header.getInt(0))!=ZipWriter.LOCAL_HEADER_SIG)
+			throw new IOException("No local header for "+e.name()+" at offset "+e.offset());
+		int nameLength = Short.toUnsignedInt(header.getShort(26));
+		int extraLength = Short.toUnsignedInt(header.getShort(28));
+		long start = e.offset() + ZipWriter.LOCAL_HEADER_SIZE + nameLength + extraLength;
+		long end = start + e.compressedSize();
+		return new InputStream() {
+			private long position = start;
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				if (position>=end)
+					return -1;
+				int n = archive.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end-position)), position);
+				if (n<0)
+					throw new IOException("Unexpected end of archive at "+position);
+				position += n;
+				return n;
+			}
+
+			@Override
+			public int read() throws IOException {
+				byte[] one = new byte[1];
+				return read(one, 0, 1)<0 ? -1 : one[0] & 0xFF;
+			}
+		};
+	}
+
+	static void readFully(FileChannel ch, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			int n = ch.read(buffer, position+buffer.position());
+			if (n<0)
+				throw new IOException("Unexpected end of archive at "+(position+buffer.position()));
+		}
+	}
+
+}
@@ -0,0 +1,39 @@
+package com.ak.zipp;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The outcome of a completed {@link ZipJob}.
+ *
+ * @param zipFile the archive written
+ * @param entries the entries written -- folders included
+ * @param bytes the uncompressed bytes written
+ * @param elapsed the wall-clock time the job took
+ * @param levels the deflate levels chosen to meet the {@link Switch#DEADLINE}, the starting one
+ *        first -- none without a deadline
+ */
+public record ZipResult(Path zipFile, long entries, long bytes, Duration elapsed, List<LevelChange> levels) {
+
+	public ZipResult(Path zipFile, long entries, long bytes, Duration elapsed) {
+		this(zipFile, entries, bytes, elapsed, List.of());
+	}
+
+	/**
+	 * A deflate level picked during the run -- see {@link LevelGovernor}.
+	 *
+	 * @param at the time into the run
+	 * @param bytesDone the uncompressed bytes done by then
+	 * @param level the level of the file entries from then on
+	 * @param reason why
+	 */
+	public record LevelChange(Duration at, long bytesDone, int level, String reason) {
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%6.1fs %14d bytes  level %d  %s", at.toMillis()/1000.0, bytesDone, level, reason);
+		}
+	}
+}
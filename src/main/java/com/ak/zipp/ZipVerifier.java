@@ -0,0 +1,147 @@
+package com.ak.zipp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Checks an archive against the digest manifest it carries -- see {@link DigestManifest}.
+ *
+ * <p>Every file entry is inflated, and its digest and CRC-32 checked; the entries are
+ * checked concurrently, each reading the archive at its own position. Files missing from
+ * the archive, and files the manifest doesn't name, are reported as well.</p>
+ */
+public class ZipVerifier {
+
+	/**
+	 * Usage: {@code ZipVerifier archive [threads]} -- or {@code zipp verify archive [threads]}.
+	 * Prints the problems found, one per line, and exits with 1 if there are any.
+	 * The pool size defaults to the number of available processors.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length==0)
+			throw new IllegalArgumentException("Usage: ZipVerifier archive [threads]");
+		int threads = args.length>1
+				? Integer.parseInt(args[1])
+				: Runtime.getRuntime().availableProcessors();
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			List<String> problems = verify(Paths.get(args[0]), pool);
+			problems.forEach(System.out::println);
+			if (!problems.isEmpty())
+				System.exit(1);
+			System.out.println(args[0]+": OK");
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Checks every file entry of {@code archive} against its manifest, on {@code pool}.
+	 *
+	 * @param pool the pool to check the entries on; left open for the caller to reuse
+	 * @return the problems found -- none if the archive is intact
+	 * @throws IOException if the archive can't be read, or carries no manifest
+	 */
+	public static List<String> verify(Path archive, ExecutorService pool) throws IOException {
+		try (FileChannel ch = FileChannel.open(archive, StandardOpenOption.READ)) {
+			List<ZipWriter.Entry> entries = ZipReader.centralDirectory(ch).entries();
+			ZipWriter.Entry manifestEntry = null;
+			for (ZipWriter.Entry e : entries)
+				if (DigestManifest.algorithmOf(e.name())!=null)
+					manifestEntry = e;
+			if (manifestEntry==null)
+				throw new IOException(archive+" carries no "+DigestManifest.ENTRY_PREFIX+"* manifest");
+			String algorithm = DigestManifest.algorithmOf(manifestEntry.name());
+			Map<String, byte[]> expected;
+			try (InputStream in = content(ch, manifestEntry)) {
+				expected = DigestManifest.parse(in.readAllBytes());
+			}
+
+			List<String> problems = new ArrayList<>();
+			List<Future<String>> checks = new ArrayList<>();
+			Set<String> seen = new HashSet<>();
+			for (ZipWriter.Entry e : entries) {
+				if (e.isDirectory() || e==manifestEntry)
+					continue;
+				seen.add(e.name());
+				byte[] digest = expected.get(e.name());
+				if (digest==null)
+					problems.add(e.name()+": not in the manifest");
+				else checks.add(pool.submit(() -> check(ch, e, algorithm, digest)));
+			}
+			for (String name : expected.keySet())
+				if (!seen.contains(name))
+					problems.add(name+": missing from the archive");
+
+			for (Future<String> check : checks)
+				try {
+					String problem = check.get();
+					if (problem!=null)
+						problems.add(problem);
+				} catch (ExecutionException e) {
+					problems.add(String.valueOf(e.getCause()));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while verifying "+archive, e);
+				}
+			return problems;
+		}
+	}
+
+	/**
+	 * Inflates an entry, and checks its digest and CRC-32.
+	 *
+	 * @return the problem found, or {@code null} if there is none
+	 */
+	private static String check(FileChannel ch, ZipWriter.Entry e, String algorithm, byte[] expected) throws IOException {
+		MessageDigest digest = DigestManifest.newDigest(algorithm);
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[DirectoryZipper.COPY_BUFFER_BYTES];
+		long size = 0;
+		try (InputStream in = content(ch, e)) {
+			int n;
+			while ((n=in.read(buffer))>0) {
+				digest.update(buffer, 0, n);
+				crc.update(buffer, 0, n);
+				size += n;
+			}
+		}
+		if (!MessageDigest.isEqual(expected, digest.digest()))
+			return e.name()+": "+algorithm+" mismatch";
+		if (crc.getValue()!=e.crc() || size!=e.size())
+			return e.name()+": CRC or size mismatch";
+		return null;
+	}
+
+	private static InputStream content(FileChannel ch, ZipWriter.Entry e) throws IOException {
+		InputStream raw = ZipReader.rawData(ch, e);
+		if (e.method()==ZipWriter.STORED)
+			return raw;
+		Inflater inflater = new Inflater(true);
+		return new InflaterInputStream(raw, inflater, DirectoryZipper.COPY_BUFFER_BYTES) {
+			@Override
+			public void close() throws IOException {
+				super.close();
+				inflater.end();
+			}
+		};
+	}
+
+}
@@ -0,0 +1,482 @@
+package com.ak.zipp;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+/**
+ * Writes a ZIP archive entry by entry, then its central directory.
+ *
+ * <p>Unlike {@link java.util.zip.ZipOutputStream}, it tells where each entry starts
+ * and ends, and it can carry on after entries it didn't write itself -- e.g. those
+ * of an interrupted run, or of an archive being appended to. Its output depends on
+ * the entries only: the same entries give the same bytes.</p>
+ *
+ * <p>Files are deflated and streamed, with their CRC and sizes in a data descriptor
+ * after the data. Folders are stored. ZIP64 records are written when the sizes,
+ * the offsets, or the number of entries call for them.</p>
+ *
+ * <p>An entry name can be written once only -- most extractors reject an archive 
+ * holding two entries of the same name, or keep either one.</p>
+ */
+class ZipWriter implements Closeable {
+
+	static final int STORED = 0;
+	static final int DEFLATED = 8;
+
+	static final int FLAG_DATA_DESCRIPTOR = 0x08;
+	static final int FLAG_UTF8 = 0x800;
+
+	static final long LOCAL_HEADER_SIG = 0x04034b50L;
+	static final long DATA_DESCRIPTOR_SIG = 0x08074b50L;
+	static final long CENTRAL_HEADER_SIG = 0x02014b50L;
+	static final long END_SIG = 0x06054b50L;
+	static final long ZIP64_END_SIG = 0x06064b50L;
+	static final long ZIP64_LOCATOR_SIG = 0x07064b50L;
+
+	static final int LOCAL_HEADER_SIZE = 30;
+	static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+	static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+	/**
+	 * An entry as recorded in the central directory.
+	 *
+	 * @param offset where the entry's local header starts
+	 * @param end where the entry -- its data descriptor included -- ends
+	 * @param foreign what another tool recorded of the entry beyond that -- {@code null} for the entries written here
+	 */
+	record Entry(String name, int method, int flags, long dosTime,
+			long crc, long compressedSize, long size, long offset, long end, Foreign foreign) {
+
+		Entry(String name, int method, int flags, long dosTime,
+				long crc, long compressedSize, long size, long offset, long end) {
+			this(name, method, flags, dosTime, crc, compressedSize, size, offset, end, null);
+		}
+
+		boolean isDirectory() {
+			return name.endsWith("/");
+		}
+
+		boolean needsZip64() {
+			return compressedSize>=ZIP64_MAGIC || size>=ZIP64_MAGIC || offset>=ZIP64_MAGIC;
+		}
+	}
+
+	/**
+	 * The fields of a central directory record written by another tool, kept as they are -- 
+	 * e.g. the unix permissions and timestamps of Info-ZIP. They are written back with the 
+	 * entry's record, so rewriting a central directory doesn't lose them.
+	 *
+	 * @param versionMadeBy the host system, in the high byte, and the version of the tool
+	 * @param extra the extra fields, but for the zip64 one -- that one is written as the sizes call for it
+	 */
+	record Foreign(int versionMadeBy, int internalAttributes, long externalAttributes, byte[] extra, byte[] comment) {
+
+		// the extra fields holding file times: NTFS, extended timestamp, and Info-ZIP unix
+		private static final Set<Integer> TIME_FIELDS = Set.of(0x000A, 0x5455, 0x5855);
+
+		/** these fields, but for the extra fields holding file times -- for a {@link Switch#REPRODUCIBLE} archive */
+		Foreign withoutTimes() {
+			ByteArrayOutputStream kept = new ByteArrayOutputStream(extra.length);
+			for (int x=0; x+4<=extra.length; ) {
+				int id = (extra[x]&0xFF) | (extra[x+1]&0xFF)<<8;
+				int length = Math.min((extra[x+2]&0xFF) | (extra[x+3]&0xFF)<<8, extra.length-x-4);
+				if (!TIME_FIELDS.contains(id))
+					kept.write(extra, x, 4+length);
+				x += 4+length;
+			}
+			return new Foreign(versionMadeBy, internalAttributes, externalAttributes, kept.toByteArray(), comment);
+		}
+	}
+
+	// when the first archive of this JVM got its first byte -- 0 till then
+	private static final AtomicLong FIRST_WRITE_MILLIS = new AtomicLong();
+
+	private final OutputStream out;
+	private long written;
+	private boolean wrote;
+	private final List<Entry> entries;
+	private final Set<String> names = new HashSet<>();
+	private final Deflater deflater;
+	private final byte[] inBuffer = new byte[DirectoryZipper.COPY_BUFFER_BYTES];
+	private final byte[] outBuffer = new byte[DirectoryZipper.COPY_BUFFER_BYTES];
+	private final byte[] scratch = new byte[64];
+	private boolean finished;
+
+	ZipWriter(OutputStream out) {
+		this(out, 0, List.of());
+	}
+
+	/**
+	 * Carries on an archive whose first {@code offset} bytes are already written,
+	 * holding {@code existing} entries.
+	 */
+	ZipWriter(OutputStream out, long offset, List<Entry> existing) {
+		this(out, offset, existing, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	ZipWriter(OutputStream out, long offset, List<Entry> existing, int level) {
+		this.out = out;
+		this.written = offset;
+		this.entries = new ArrayList<>(existing);
+		for (Entry e : existing)
+			names.add(e.name());
+		this.deflater = new Deflater(level, true);
+	}
+
+	/** the bytes of the archive written so far -- the start of the next entry */
+	long offset() {
+		return written;
+	}
+
+	List<Entry> entries() {
+		return Collections.unmodifiableList(entries);
+	}
+
+	void setLevel(int level) {
+		deflater.setLevel(level);
+	}
+
+	/**
+	 * Adds a folder entry. A trailing {@code /} is added to the name if missing.
+	 */
+	Entry addDirectory(String name, long lastModifiedMillis) throws IOException {
+		if (!name.endsWith("/"))
+			name += "/";
+		checkNew(name);
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		long start = written;
+		int flags = utf8Flag(name);
+		long dosTime = dosTime(lastModifiedMillis);
+		writeLocalHeader(nameBytes, STORED, flags, dosTime, 0, 0, 0);
+		return add(new Entry(name, STORED, flags, dosTime, 0, 0, 0, start, written));
+	}
+
+	/**
+	 * Adds a file entry, deflating all of {@code in} into it.
+	 */
+	Entry addFile(String name, long lastModifiedMillis, InputStream in) throws IOException {
+		checkNew(name);
+		byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+		long start = written;
+		int flags = utf8Flag(name) | FLAG_DATA_DESCRIPTOR;
+		long dosTime = dosTime(lastModifiedMillis);
+		writeLocalHeader(nameBytes, DEFLATED, flags, dosTime, 0, 0, 0);
+
+		CRC32 crc = new CRC32();
+		long size = 0;
+		long dataStart = written;
+		deflater.reset();
+		int n;
+		while ((n=in.read(inBuffer))>=0) {
+			if (n==0)
+				continue;
+			crc.update(inBuffer, 0, n);
+			size += n;
+			deflater.setInput(inBuffer, 0, n);
+			while (!deflater.needsInput())
+				drain();
+		}
+		deflater.finish();
+		while (!deflater.finished())
+			drain();
+		long compressedSize = written-dataStart;
+
+		writeDataDescriptor(crc.getValue(), compressedSize, size);
+		return add(new Entry(name, DEFLATED, flags, dosTime, crc.getValue(), compressedSize, size, start, written));
+	}
+
+	/**
+	 * Adds an entry whose data is already compressed -- e.g. copied out of another archive.
+	 * Exactly {@code source.compressedSize()} bytes are read from {@code data}.
+	 * The entry gets a plain local header, with its CRC and sizes up front; its central 
+	 * directory record keeps the {@link Entry#foreign() foreign} fields of the source.
+	 */
+	Entry addRaw(Entry source, InputStream data) throws IOException {
+		checkNew(source.name());
+		byte[] nameBytes = source.name().getBytes(StandardCharsets.UTF_8);
+		long start = written;
+		int flags = source.flags() & ~FLAG_DATA_DESCRIPTOR;
+		writeLocalHeader(nameBytes, source.method(), flags, source.dosTime(),
+				source.crc(), source.compressedSize(), source.size());
+
+		long left = source.compressedSize();
+		while (left>0) {
+			int n = data.read(inBuffer, 0, (int) Math.min(inBuffer.length, left));
+			if (n<0)
+				throw new IOException("Entry "+source.name()+" is short of "+left+" compressed bytes");
+			write(inBuffer, 0, n);
+			left -= n;
+		}
+		return add(new Entry(source.name(), source.method(), flags, source.dosTime(),
+				source.crc(), source.compressedSize(), source.size(), start, written, source.foreign()));
+	}
+
+	private Entry add(Entry e) {
+		entries.add(e);
+		names.add(e.name());
+		return e;
+	}
+
+	/**
+	 * @throws ZipException if the archive holds an entry of that name already -- nothing is written then
+	 */
+	private void checkNew(String name) throws ZipException {
+		if (names.contains(name))
+			throw new ZipException("Duplicate entry "+name);
+	}
+
+	private void drain() throws IOException {
+		int n = deflater.deflate(outBuffer, 0, outBuffer.length, Deflater.NO_FLUSH);
+		if (n>0)
+			write(outBuffer, 0, n);
+	}
+
+	/**
+	 * Writes the central directory, and the end records. Nothing can be added afterwards.
+	 */
+	void finish() throws IOException {
+		if (finished)
+			return;
+		finished = true;
+
+		long cdStart = written;
+		for (Entry e : entries)
+			writeCentralHeader(e);
+		long cdSize = written-cdStart;
+
+		int count = entries.size();
+		if (count>=ZIP64_MAGIC_COUNT || cdStart>=ZIP64_MAGIC || cdSize>=ZIP64_MAGIC) {
+			long zip64End = written;
+			int i = 0;
+			i = putInt(i, ZIP64_END_SIG);
+			i = putLong(i, 44);  // the size of the rest of the record
+			i = putShort(i, 45);  // version made by
+			i = putShort(i, 45);  // version needed
+			i = putInt(i, 0);  // this disk
+			i = putInt(i, 0);  // the disk of the central directory
+			i = putLong(i, count);
+			i = putLong(i, count);
+			i = putLong(i, cdSize);
+			i = putLong(i, cdStart);
+			write(scratch, 0, i);
+
+			i = 0;
+			i = putInt(i, ZIP64_LOCATOR_SIG);
+			i = putInt(i, 0);  // the disk of the zip64 end record
+			i = putLong(i, zip64End);
+			i = putInt(i, 1);  // number of disks
+			write(scratch, 0, i);
+		}
+
+		int i = 0;
+		i = putInt(i, END_SIG);
+		i = putShort(i, 0);  // this disk
+		i = putShort(i, 0);  // the disk of the central directory
+		i = putShort(i, Math.min(count, ZIP64_MAGIC_COUNT));
+		i = putShort(i, Math.min(count, ZIP64_MAGIC_COUNT));
+		i = putInt(i, Math.min(cdSize, ZIP64_MAGIC));
+		i = putInt(i, Math.min(cdStart, ZIP64_MAGIC));
+		i = putShort(i, 0);  // comment length
+		write(scratch, 0, i);
+		out.flush();
+	}
+
+	void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Finishes the archive, and closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			deflater.end();
+			out.close();
+		}
+	}
+
+	/**
+	 * Closes the underlying stream without finishing the archive --
+	 * what's written so far is left as is.
+	 */
+	void abandon() throws IOException {
+		finished = true;
+		deflater.end();
+		out.close();
+	}
+
+	//// the records
+
+	private void writeLocalHeader(byte[] name, int method, int flags, long dosTime,
+			long crc, long compressedSize, long size) throws IOException {
+		boolean zip64 = compressedSize>=ZIP64_MAGIC || size>=ZIP64_MAGIC;
+		int i = 0;
+		i = putInt(i, LOCAL_HEADER_SIG);
+		i = putShort(i, zip64 ? 45 : versionNeeded(method));
+		i = putShort(i, flags);
+		i = putShort(i, method);
+		i = putInt(i, dosTime);
+		i = putInt(i, crc);
+		i = putInt(i, zip64 ? ZIP64_MAGIC : compressedSize);
+		i = putInt(i, zip64 ? ZIP64_MAGIC : size);
+		i = putShort(i, name.length);
+		i = putShort(i, zip64 ? 20 : 0);  // extra field length
+		write(scratch, 0, i);
+		write(name, 0, name.length);
+		if (zip64) {
+			i = 0;
+			i = putShort(i, 0x0001);
+			i = putShort(i, 16);
+			i = putLong(i, size);
+			i = putLong(i, compressedSize);
+			write(scratch, 0, i);
+		}
+	}
+
+	private void writeDataDescriptor(long crc, long compressedSize, long size) throws IOException {
+		int i = 0;
+		i = putInt(i, DATA_DESCRIPTOR_SIG);
+		i = putInt(i, crc);
+		if (compressedSize>=ZIP64_MAGIC || size>=ZIP64_MAGIC) {
+			i = putLong(i, compressedSize);
+			i = putLong(i, size);
+		} else {
+			i = putInt(i, compressedSize);
+			i = putInt(i, size);
+		}
+		write(scratch, 0, i);
+	}
+
+	private void writeCentralHeader(Entry e) throws IOException {
+		byte[] name = e.name().getBytes(StandardCharsets.UTF_8);
+		boolean bigCompressed = e.compressedSize()>=ZIP64_MAGIC;
+		boolean bigSize = e.size()>=ZIP64_MAGIC;
+		boolean bigOffset = e.offset()>=ZIP64_MAGIC;
+		int extraLength = (bigSize ? 8 : 0) + (bigCompressed ? 8 : 0) + (bigOffset ? 8 : 0);
+		int version = e.needsZip64() ? 45 : versionNeeded(e.method());
+		Foreign foreign = e.foreign();
+		byte[] foreignExtra = foreign==null ? NONE : foreign.extra();
+		byte[] comment = foreign==null ? NONE : foreign.comment();
+
+		int i = 0;
+		i = putInt(i, CENTRAL_HEADER_SIG);
+		i = putShort(i, foreign==null ? version  // version made by
+				: (foreign.versionMadeBy() & 0xFF00) | Math.max(foreign.versionMadeBy() & 0xFF, version));
+		i = putShort(i, version);  // version needed
+		i = putShort(i, e.flags());
+		i = putShort(i, e.method());
+		i = putInt(i, e.dosTime());
+		i = putInt(i, e.crc());
+		i = putInt(i, bigCompressed ? ZIP64_MAGIC : e.compressedSize());
+		i = putInt(i, bigSize ? ZIP64_MAGIC : e.size());
+		i = putShort(i, name.length);
+		i = putShort(i, (extraLength==0 ? 0 : extraLength+4) + foreignExtra.length);
+		i = putShort(i, comment.length);
+		i = putShort(i, 0);  // disk number start
+		i = putShort(i, foreign==null ? 0 : foreign.internalAttributes());
+		i = putInt(i, foreign==null ? 0 : foreign.externalAttributes());
+		i = putInt(i, bigOffset ? ZIP64_MAGIC : e.offset());
+		write(scratch, 0, i);
+		write(name, 0, name.length);
+		if (extraLength>0) {
+			i = 0;
+			i = putShort(i, 0x0001);
+			i = putShort(i, extraLength);
+			if (bigSize)
+				i = putLong(i, e.size());
+			if (bigCompressed)
+				i = putLong(i, e.compressedSize());
+			if (bigOffset)
+				i = putLong(i, e.offset());
+			write(scratch, 0, i);
+		}
+		write(foreignExtra, 0, foreignExtra.length);
+		write(comment, 0, comment.length);
+	}
+
+	private static final byte[] NONE = new byte[0];
+
+	private static int versionNeeded(int method) {
+		return method==DEFLATED ? 20 : 10;
+	}
+
+	private static int utf8Flag(String name) {
+		for (int i=0; i<name.length(); i++)
+			if (name.charAt(i)>0x7F)
+				return FLAG_UTF8;
+		return 0;
+	}
+
+	/**
+	 * Converts epoch millis to MS-DOS date and time, in the default time zone --
+	 * with a 2-second resolution, and clamped to 1980 at the earliest.
+	 */
+	static long dosTime(long millis) {
+		LocalDateTime t = LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+		if (t.getYear()<1980)
+			return (1 << 21) | (1 << 16);  // 1980-01-01 00:00
+		return (t.getYear()-1980) << 25
+				| t.getMonthValue() << 21
+				| t.getDayOfMonth() << 16
+				| t.getHour() << 11
+				| t.getMinute() << 5
+				| t.getSecond() >> 1;
+	}
+
+	/**
+	 * The time the first archive written in this JVM got its first byte, in epoch millis 
+	 * -- or 0 if none has yet.
+	 */
+	static long firstWriteMillis() {
+		return FIRST_WRITE_MILLIS.get();
+	}
+
+	//// little-endian encoding
+
+	private void write(byte[] b, int off, int len) throws IOException {
+		if (!wrote) {
+			wrote = true;
+			FIRST_WRITE_MILLIS.compareAndSet(0, System.currentTimeMillis());
+		}
+		out.write(b, off, len);
+		written += len;
+	}
+
+	private int putShort(int i, long v) {
+		scratch[i] = (byte) v;
+		scratch[i+1] = (byte) (v >>> 8);
+		return i+2;
+	}
+
+	private int putInt(int i, long v) {
+		putShort(i, v);
+		putShort(i+2, v >>> 16);
+		return i+4;
+	}
+
+	private int putLong(int i, long v) {
+		putInt(i, v);
+		putInt(i+4, v >>> 32);
+		return i+8;
+	}
+
+}
@@ -1,13 +1,24 @@
 package com.ak.zipp;
 
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 
 @SpringBootApplication
-public class ZippApplication {
+public class ZippApplication implements ApplicationRunner {
 
 	public static void main(String[] args) {
 		SpringApplication.run(ZippApplication.class, args);
 	}
 
+	@Override
+	public void run(ApplicationArguments args) {
+		// for one-shot CLI use, prefer ZippCli -- it skips the Spring context
+		// the --name=value options are Spring's; the zipp switches have a single dash
+		String[] zippArgs = args.getNonOptionArgs().toArray(String[]::new);
+		if (zippArgs.length>0)
+			ZippCli.run("spring", zippArgs);
+	}
+
 }
@@ -0,0 +1,71 @@
+package com.ak.zipp;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Plain command-line entry point -- no Spring context is booted, 
+ * as neither {@link CommandParser} nor {@link DirectoryZipper} needs one.
+ *
+ * <p>The arguments are the switches of a zipp command, with or without the leading 
+ * {@code zipp} -- e.g. {@code java -jar zipp-0.0.1-SNAPSHOT-cli.jar -s src -z out.zip}.</p>
+ *
+ * <p>Setting the system property {@code zipp.startup.log} records the time from JVM start 
+ * to the first byte written to the archive -- {@code -} if none was, e.g. a cached one was 
+ * copied -- and to the end of the run: appended to the file the property names, 
+ * or printed if it is left empty. The {@code cli-cds} Maven profile uses it to track 
+ * this launcher against {@link ZippApplication}.</p>
+ *
+ * <p>{@code verify archive [threads]} checks an archive against its digest manifest 
+ * instead -- see {@link ZipVerifier}.</p>
+ */
+public class ZippCli {
+
+	public static void main(String[] args) {
+		run("cli", args);
+	}
+
+	static void run(String launcher, String[] args) {
+		if (args.length>0 && args[0].equalsIgnoreCase("verify")) {
+			try {
+				ZipVerifier.main(Arrays.copyOfRange(args, 1, args.length));
+			} catch (IOException e) { e.printStackTrace(); }
+			return;
+		}
+		String[] cmd = args;
+		if (args.length==0 || !args[0].equalsIgnoreCase("zipp")) {
+			cmd = new String[args.length+1];
+			cmd[0] = "zipp";
+			System.arraycopy(args, 0, cmd, 1, args.length);
+		}
+
+		DirectoryZipper.pipe(cmd);
+
+		String log = System.getProperty("zipp.startup.log");
+		if (log!=null) 
+			logStartup(log, launcher);
+	}
+
+	private static void logStartup(String log, String launcher) {
+		long started = ManagementFactory.getRuntimeMXBean().getStartTime();
+		long firstByte = ZipWriter.firstWriteMillis();
+		String line = Instant.now() 
+				+ "\t" + launcher
+				+ "\t" + (firstByte==0 ? "-" : String.valueOf(firstByte-started)) + " ms to first byte"
+				+ "\t" + (System.currentTimeMillis()-started) + " ms total";
+		if (log.isBlank()) {
+			System.out.println(line);
+			return;
+		}
+		try {
+			Files.writeString(Paths.get(log), line+System.lineSeparator(), 
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		} catch (IOException e) { e.printStackTrace(); }
+	}
+
+}
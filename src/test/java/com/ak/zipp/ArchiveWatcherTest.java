@@ -0,0 +1,130 @@
+package com.ak.zipp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.zip.ZipFile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ArchiveWatcherTest {
+
+	@TempDir
+	Path sourceRootDir;
+
+	@TempDir
+	Path destRootDir;
+
+	@Test
+	void testChangesArePublished() throws Exception {
+		Files.writeString(sourceRootDir.resolve("a.txt"), "apple");
+		Files.writeString(sourceRootDir.resolve("keep.txt"), "kiwi");
+		Files.createDirectories(sourceRootDir.resolve("d1"));
+		Files.writeString(sourceRootDir.resolve("d1").resolve("b.txt"), "banana");
+		Files.writeString(sourceRootDir.resolve("c.log"), "cherry");
+
+		String command = "zipp -s "+sourceRootDir+" -d "+destRootDir+" -z watched.zip -i *.txt -w 1";
+		ZipJob job = DirectoryZipper.submit(command.split(" +"));
+		Path zipToPath = destRootDir.resolve("watched.zip");
+		try {
+			assertTrue(waitFor(zipToPath, zip -> zip.getEntry("a.txt")!=null), "The initial archive should be published.");
+
+			Files.writeString(sourceRootDir.resolve("a.txt"), "apricot");
+			Files.writeString(sourceRootDir.resolve("new.txt"), "nectarine");
+			Files.writeString(sourceRootDir.resolve("new.log"), "not included");
+			Files.delete(sourceRootDir.resolve("d1").resolve("b.txt"));
+			Files.createDirectories(sourceRootDir.resolve("d2"));
+			Files.writeString(sourceRootDir.resolve("d2").resolve("e.txt"), "elderberry");
+
+			assertTrue(waitFor(zipToPath, zip -> zip.getEntry("d2/e.txt")!=null && zip.getEntry("d1/b.txt")==null), 
+					"The changes should be published.");
+			try (ZipFile zip = new ZipFile(zipToPath.toFile())) {
+				assertEquals("apricot", new String(zip.getInputStream(zip.getEntry("a.txt")).readAllBytes()));
+				assertEquals("nectarine", new String(zip.getInputStream(zip.getEntry("new.txt")).readAllBytes()));
+				assertEquals("kiwi", new String(zip.getInputStream(zip.getEntry("keep.txt")).readAllBytes()));
+				assertNull(zip.getEntry("new.log"), "The include/exclude switches should still apply.");
+				assertNull(zip.getEntry("c.log"));
+			}
+			// deflated entries have a data descriptor; entries copied over raw have their sizes up front
+			Map<String, ZipWriter.Entry> entries = entries(zipToPath);
+			assertEquals(0, entries.get("keep.txt").flags() & ZipWriter.FLAG_DATA_DESCRIPTOR, 
+					"The unchanged file should be copied over still compressed.");
+			assertEquals(ZipWriter.FLAG_DATA_DESCRIPTOR, entries.get("a.txt").flags() & ZipWriter.FLAG_DATA_DESCRIPTOR, 
+					"The changed file should be compressed again.");
+		} finally {
+			job.cancel();
+		}
+
+		ZipResult result = job.result().get(10, TimeUnit.SECONDS);
+		assertEquals(zipToPath, result.zipFile());
+		assertTrue(Files.exists(zipToPath), "The last published archive should stay once watching stops.");
+		assertEquals(1, DirectoryZipperTest.getDirContents(destRootDir).size(), "Nothing but the archive should be left.");
+	}
+
+	@Test
+	void testFailedPublishingIsRetried() throws Exception {
+		Files.writeString(sourceRootDir.resolve("a.txt"), "apple");
+		String command = "zipp -s "+sourceRootDir+" -d "+destRootDir+" -z retried.zip -w 1";
+		ZipJob job = DirectoryZipper.submit(command.split(" +"));
+		Path zipToPath = destRootDir.resolve("retried.zip");
+		try {
+			assertTrue(waitFor(zipToPath, zip -> zip.getEntry("a.txt")!=null));
+			// a folder in the way of the archive being published -- the publishing fails
+			Path inTheWay = Files.createDirectory(ArchiveWatcher.publishingPath(zipToPath));
+			Files.writeString(sourceRootDir.resolve("b.txt"), "banana");
+			Thread.sleep(2500);
+			assertTrue(waitFor(zipToPath, zip -> zip.getEntry("a.txt")!=null && zip.getEntry("b.txt")==null), 
+					"The current archive should stay as it was.");
+			assertTrue(!job.result().isDone(), "A failed publishing should not end the watching.");
+
+			Files.delete(inTheWay);
+			assertTrue(waitFor(zipToPath, zip -> zip.getEntry("b.txt")!=null), "The next interval should publish.");
+		} finally {
+			job.cancel();
+		}
+	}
+
+	@Test
+	void testNotWithJournal() {
+		String command = "zipp -s "+sourceRootDir+" -d "+destRootDir+" -z j.zip -j -w 1";
+		assertThrows(IllegalArgumentException.class, () -> DirectoryZipper.submit(command.split(" +")));
+	}
+
+	@Test
+	void testNotWithFileList() {
+		String command = "zipp -s "+sourceRootDir+" -d "+destRootDir+" -fl - -w 1";
+		assertThrows(IllegalArgumentException.class, () -> DirectoryZipper.submit(command.split(" +")));
+	}
+
+	static Map<String, ZipWriter.Entry> entries(Path zipFile) throws IOException {
+		try (FileChannel ch = FileChannel.open(zipFile, StandardOpenOption.READ)) {
+			return ZipReader.centralDirectory(ch).entries().stream()
+					.collect(Collectors.toMap(ZipWriter.Entry::name, e -> e));
+		}
+	}
+
+	static boolean waitFor(Path zipFile, Predicate<ZipFile> condition) throws IOException, InterruptedException {
+		for (int i=0; i<100; i++) {
+			if (Files.exists(zipFile))
+				try (ZipFile zip = new ZipFile(zipFile.toFile())) {
+					if (condition.test(zip))
+						return true;
+				}
+			Thread.sleep(100);
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,111 @@
+package com.ak.zipp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipFile;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class BatchZipperTest {
+
+	@TempDir
+	static Path sourceRootDir;
+
+	@TempDir
+	static Path destRootDir;
+
+	static ExecutorService pool;
+
+	@BeforeAll
+	static void setup() throws IOException {
+		Files.createFile(sourceRootDir.resolve("a.txt"));
+		Files.createFile(sourceRootDir.resolve("b.log"));
+		pool = Executors.newFixedThreadPool(4);
+	}
+
+	@AfterAll
+	static void tearDown() {
+		pool.shutdown();
+	}
+
+	@Test
+	void testManyCommands() throws IOException {
+		StringBuilder commands = new StringBuilder("# one zip per line\n\n");
+		for (int i=0; i<20; i++)
+			commands.append("zipp -s "+sourceRootDir+" -d "+destRootDir+" -z batch"+i+".zip -i *.txt\n");
+
+		int failed = BatchZipper.run(new StringReader(commands.toString()), pool);
+		assertEquals(0, failed, "All the commands should succeed.");
+
+		for (int i=0; i<20; i++)
+			try (ZipFile zipFile = new ZipFile(destRootDir.resolve("batch"+i+".zip").toFile())) {
+				assertNotNull(zipFile.getEntry("a.txt"), "Zip file should contain the included file.");
+				assertTrue(zipFile.getEntry("b.log")==null, "Zip file should NOT contain the non-included file.");
+			}
+	}
+
+	@Test
+	void testFailuresAreCounted() throws IOException {
+		String commands = "zipp -s "+sourceRootDir+" -d "+destRootDir+" -z ok.zip\n"
+				+ "zipp -illegal\n"
+				+ "zipp -s "+sourceRootDir+" -d "+destRootDir+" -z ok2.zip\n";
+
+		int failed = BatchZipper.run(new StringReader(commands), pool);
+		assertEquals(1, failed, "The illegal switch should fail, the rest should go through.");
+	}
+
+	@Test
+	void testWriteFailuresAreCounted() throws IOException {
+		// no file system takes a name that long -- the archive can't be created
+		String tooLong = "x".repeat(300)+".zip";
+		String commands = "zipp -s "+sourceRootDir+" -d "+destRootDir+" -z "+tooLong+"\n"
+				+ "zipp -s "+sourceRootDir+" -d "+destRootDir+" -z ok3.zip\n";
+
+		int failed = BatchZipper.run(new StringReader(commands), pool);
+		assertEquals(1, failed, "A zip that can't be written should count as failed.");
+		assertTrue(Files.exists(destRootDir.resolve("ok3.zip")));
+	}
+
+	@Test
+	void testQuotedArguments() throws IOException {
+		Path spaced = Files.createDirectories(sourceRootDir.getParent().resolve("with spaces "+System.nanoTime()));
+		Files.writeString(spaced.resolve("s.txt"), "s");
+		try {
+			String commands = "zipp -s \""+spaced+"\" -d '"+destRootDir+"' -z spaced.zip\n"
+					+ "zipp -s \"unclosed\n";
+			assertEquals(1, BatchZipper.run(new StringReader(commands), pool), "Only the unclosed quote should fail.");
+			try (ZipFile zipFile = new ZipFile(destRootDir.resolve("spaced.zip").toFile())) {
+				assertNotNull(zipFile.getEntry("s.txt"));
+			}
+		} finally {
+			Files.deleteIfExists(spaced.resolve("s.txt"));
+			Files.deleteIfExists(spaced);
+		}
+		assertEquals(java.util.List.of("zipp", "-s", "a b", "-z", "c.zip", ""), 
+				java.util.Arrays.asList(BatchZipper.split("  zipp -s \"a b\"  -z 'c.zip' \"\"")));
+	}
+
+	@Test
+	void testConcurrentDefaultNames() throws IOException {
+		Path dTemp = Files.createDirectories(destRootDir.resolve("defaults"));
+		StringBuilder commands = new StringBuilder();
+		for (int i=0; i<10; i++)
+			commands.append("zipp -s "+sourceRootDir+" -d "+dTemp+"\n");
+
+		assertEquals(0, BatchZipper.run(new StringReader(commands.toString()), pool));
+		assertEquals(10, DirectoryZipperTest.getDirContents(dTemp).size(),
+				"Concurrent jobs on the same source should get distinct default file names.");
+	}
+
+}
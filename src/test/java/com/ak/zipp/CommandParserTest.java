@@ -78,6 +78,25 @@ public class CommandParserTest {
         		, "Map should contain correct file arguments");
 }
 
+    @Test
+    void testProcessCommand_optionalArgument() {
+        EnumMap<Switch, Set<String>> result = CommandParser.processCommand(new String[]{"zipp", "-WATCH", "-s", "src"});
+        assertTrue(result.containsKey(Switch.WATCH), "A bare -WATCH before another switch should be kept");
+        assertTrue(result.get(Switch.WATCH).isEmpty(), "A bare -WATCH takes the default interval");
+        assertTrue(result.get(Switch.SRCDIR).contains("src"));
+
+        result = CommandParser.processCommand(new String[]{"zipp", "-w", "5", "-s", "src"});
+        assertTrue(result.get(Switch.WATCH).contains("5"));
+
+        result = CommandParser.processCommand(new String[]{"zipp", "-CACHE", "-s", "src"});
+        assertTrue(result.containsKey(Switch.CACHE), "A bare -CACHE before another switch should be kept");
+        assertTrue(result.get(Switch.CACHE).isEmpty(), "A bare -CACHE takes the default cache folder");
+
+        result = CommandParser.processCommand(new String[]{"zipp", "-DIGEST", "-s", "src"});
+        assertTrue(result.containsKey(Switch.DIGEST), "A bare -DIGEST before another switch should be kept");
+        assertTrue(result.get(Switch.DIGEST).isEmpty(), "A bare -DIGEST takes the default algorithm");
+    }
+
     @Test
     void testProcessCommand_duplicateSwitch() {
         assertThrows(IllegalArgumentException.class, () -> {
@@ -7,11 +7,13 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.Proxy;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.HashMap;
@@ -267,7 +269,7 @@ public class DirectoryZipperTest {
 	void testTooManyArgumentsForSingleValued() throws IOException {
 		String msgPart = " can NOT take multiple arguments";
 		Exception exception = assertThrows(IllegalArgumentException.class, () 
-				-> DirectoryZipper.pipe("zipp -s sth other".split(" +")));
+				-> DirectoryZipper.pipe("zipp -fl sth other".split(" +")));
 		assertTrue(exception.getMessage().endsWith(msgPart), 
 				"Exception should indicate multiple arguments for single-argument switch -- ");
 
@@ -458,4 +460,504 @@ public class DirectoryZipperTest {
 
 	}
 
+	@Test
+	void testFileList() throws IOException {
+		Path list = destRootDir.resolve("list"+System.currentTimeMillis());
+		Files.writeString(list, "aFile\nd3\nd3/a.log\n\n");
+
+		String zipToFile = aFreshZipFilename();
+		String commandLine = "zipp -s "+sourceRootDir+" -d "+destRootDir+" -z "+zipToFile+" -fl "+list;
+		DirectoryZipper.pipe(commandLine.split(" +"));
+
+		Path zipToPath = destRootDir.resolve(zipToFile);
+		try (ZipFile zipFile = new ZipFile(zipToPath.toString())) {
+			assertTrue(zipFile.size()==3, "Zip file should contain the listed paths only.");
+			assertNotNull(zipFile.getEntry("aFile"));
+			assertNotNull(zipFile.getEntry("d3/"));
+			assertNotNull(zipFile.getEntry("d3/a.log"));
+		}
+
+		Files.writeString(list, ".r\0d1/apple.txt");
+		String zipToFile2 = aFreshZipFilename();
+		DirectoryZipper.pipe(("zipp -s "+sourceRootDir+" -d "+destRootDir+" -z "+zipToFile2+" -fl "+list).split(" +"));
+		Set<String> in = extractZipEntryNames(destRootDir.resolve(zipToFile2));
+		assertTrue(in.size()==2, "NUL-separated lists should be read too.");
+		assertTrue(in.contains(File.separator+"d1"+File.separator+"apple.txt"));
+	}
+
+	@Test
+	void testFileListOutsideSource() throws IOException {
+		Path list = destRootDir.resolve("list"+System.currentTimeMillis());
+		Files.writeString(list, "aFile\n../elsewhere\n");
+
+		String commandLine = "zipp -s "+sourceRootDir+" -d "+destRootDir+" -z "+aFreshZipFilename()+" -fl "+list;
+		assertThrows(IllegalArgumentException.class, () -> DirectoryZipper.pipe(commandLine.split(" +")),
+				"Listed paths should not escape the source folder.");
+	}
+
+	@Test
+	void testFileListDuplicates() throws IOException {
+		Path list = destRootDir.resolve("list"+System.currentTimeMillis());
+		Files.writeString(list, "aFile\n./aFile\naFile\nd3\nd3/\nd1/../aFile\n");
+
+		DirectoryZipper.pipe(("zipp -s "+sourceRootDir+" -d "+destRootDir+" -z listed-twice.zip -fl "+list).split(" +"));
+		try (ZipFile zipFile = new ZipFile(destRootDir.resolve("listed-twice.zip").toFile())) {
+			assertTrue(zipFile.stream().map(e -> e.getName()).toList().equals(java.util.List.of("aFile", "d3/")),
+					"A path listed twice, however spelled, should give one entry.");
+		}
+	}
+
+	@Test
+	void testResumeAfterFailure() throws IOException {
+		Path src = Files.createDirectories(destRootDir.resolve("resumeSrc"+System.currentTimeMillis()));
+		Files.write(src.resolve("f1"), new byte[100_000]);
+		Files.writeString(src.resolve("f2"), "second");
+		Path list = destRootDir.resolve("list"+System.currentTimeMillis());
+		Files.writeString(list, "f1\nlater\nf2\n");
+
+		// the run fails at `later` -- not there yet
+		String zipToFile = aFreshZipFilename();
+		String commandLine = "zipp -s "+src+" -d "+destRootDir+" -z "+zipToFile+" -fl "+list;
+		DirectoryZipper.pipe((commandLine+" -j").split(" +"));
+		Path zipToPath = destRootDir.resolve(zipToFile);
+		assertTrue(Files.exists(zipToPath), "A failed journaled run should leave its archive.");
+		assertTrue(Files.exists(zipToPath.resolveSibling(zipToFile+".journal")), "A failed journaled run should leave its journal.");
+
+		Files.writeString(src.resolve("later"), "third");
+		DirectoryZipper.pipe((commandLine+" -rs").split(" +"));
+		assertTrue(!Files.exists(zipToPath.resolveSibling(zipToFile+".journal")), "The journal should go once the archive is complete.");
+
+		String zipToFile2 = aFreshZipFilename();
+		DirectoryZipper.pipe(("zipp -s "+src+" -d "+destRootDir+" -z "+zipToFile2+" -fl "+list).split(" +"));
+		assertTrue(java.util.Arrays.equals(Files.readAllBytes(zipToPath), Files.readAllBytes(destRootDir.resolve(zipToFile2))),
+				"The resumed archive should be byte-for-byte the uninterrupted one.");
+	}
+
+	@Test
+	void testResumeAfterTornJournal() throws IOException {
+		Path src = Files.createDirectories(destRootDir.resolve("tornSrc"+System.nanoTime()));
+		Files.write(src.resolve("f1"), new byte[100_000]);
+		Files.writeString(src.resolve("f2"), "second");
+		Files.writeString(src.resolve("f3"), "third");
+		Path list = destRootDir.resolve("list"+System.nanoTime());
+		Files.writeString(list, "f1\nlater\nf2\nlatest\nf3\n");
+
+		// the run fails at `later`, and a crash tears a journal line -- one that would run into the next
+		String zipToFile = aFreshZipFilename();
+		String commandLine = "zipp -s "+src+" -d "+destRootDir+" -z "+zipToFile+" -fl "+list;
+		DirectoryZipper.pipe((commandLine+" -j").split(" +"));
+		Path zipToPath = destRootDir.resolve(zipToFile);
+		Path journalPath = zipToPath.resolveSibling(zipToFile+".journal");
+		Files.writeString(journalPath, "9", java.nio.file.StandardOpenOption.APPEND);
+
+		// the first resume fails at `latest`, the second one completes
+		Files.writeString(src.resolve("later"), "fourth");
+		DirectoryZipper.pipe((commandLine+" -rs").split(" +"));
+		assertTrue(Files.exists(journalPath), "A failed resumed run should leave its journal.");
+		Files.writeString(src.resolve("latest"), "fifth");
+		DirectoryZipper.pipe((commandLine+" -rs").split(" +"));
+		assertTrue(!Files.exists(journalPath), "The journal should go once the archive is complete.");
+
+		String zipToFile2 = aFreshZipFilename();
+		DirectoryZipper.pipe(("zipp -s "+src+" -d "+destRootDir+" -z "+zipToFile2+" -fl "+list).split(" +"));
+		assertTrue(java.util.Arrays.equals(Files.readAllBytes(zipToPath), Files.readAllBytes(destRootDir.resolve(zipToFile2))),
+				"Resumed twice after a torn journal, the archive should be byte-for-byte the uninterrupted one.");
+	}
+
+	@Test
+	void testResumeNeedsJournal() throws IOException {
+		String zipToFile = aFreshZipFilename();
+		Files.createFile(destRootDir.resolve(zipToFile));
+		String commandLine = "zipp -s "+sourceRootDir+" -d "+destRootDir+" -z "+zipToFile+" -rs";
+		Exception exception = assertThrows(RuntimeException.class, () -> DirectoryZipper.pipe(commandLine.split(" +")));
+		assertTrue(exception.getMessage().startsWith("Nothing to resume"));
+
+		assertThrows(RuntimeException.class, () -> DirectoryZipper.pipe(("zipp -s "+sourceRootDir+" -rs").split(" +")),
+				"Resuming needs the name of the archive.");
+	}
+
+	@Test
+	void testAppend() throws IOException {
+		Path src = Files.createDirectories(destRootDir.resolve("appendSrc"+System.currentTimeMillis()));
+		Files.writeString(src.resolve("first"), "first");
+		String zipToFile = aFreshZipFilename();
+		String commandLine = "zipp -s "+src+" -d "+destRootDir+" -z "+zipToFile;
+		DirectoryZipper.pipe(commandLine.split(" +"));
+		Path zipToPath = destRootDir.resolve(zipToFile);
+		byte[] before = Files.readAllBytes(zipToPath);
+		Object fileKey = Files.readAttributes(zipToPath, BasicFileAttributes.class).fileKey();
+
+		Files.writeString(src.resolve("second"), "second");
+		DirectoryZipper.pipe((commandLine+" -a").split(" +"));
+
+		try (ZipFile zipFile = new ZipFile(zipToPath.toString())) {
+			assertTrue(zipFile.size()==3, "Root folder, and both files.");
+			assertNotNull(zipFile.getEntry("first"));
+			assertNotNull(zipFile.getEntry("second"));
+		}
+		byte[] after = Files.readAllBytes(zipToPath);
+		long dataEnd;
+		try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(zipToPath)) {
+			dataEnd = ZipReader.centralDirectory(ch).entries().get(1).end();
+		}
+		assertTrue(java.util.Arrays.equals(before, 0, (int) dataEnd, after, 0, (int) dataEnd),
+				"The existing entries should stay in place.");
+		if (fileKey!=null)
+			assertTrue(fileKey.equals(Files.readAttributes(zipToPath, BasicFileAttributes.class).fileKey()), 
+					"The archive should be appended to in place, not replaced by a copy.");
+		assertTrue(Files.notExists(AppendRollback.of(zipToPath)), "The rollback should be gone.");
+	}
+
+	@Test
+	void testAppendRollsBackCrashedAppend() throws IOException {
+		Path src = Files.createDirectories(destRootDir.resolve("appendSrc"+System.nanoTime()));
+		Files.writeString(src.resolve("first"), "first");
+		String zipToFile = aFreshZipFilename();
+		String commandLine = "zipp -s "+src+" -d "+destRootDir+" -z "+zipToFile;
+		DirectoryZipper.pipe(commandLine.split(" +"));
+		Path zipToPath = destRootDir.resolve(zipToFile);
+
+		// an append that died halfway: its rollback saved, its central directory half overwritten
+		try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(zipToPath, 
+				java.nio.file.StandardOpenOption.READ, java.nio.file.StandardOpenOption.WRITE)) {
+			long offset = ZipReader.centralDirectory(ch).offset();
+			AppendRollback.save(zipToPath, ch, offset);
+			ch.truncate(offset);
+			ch.write(java.nio.ByteBuffer.wrap("torn entry".getBytes()), offset);
+		}
+
+		Files.writeString(src.resolve("second"), "second");
+		DirectoryZipper.pipe((commandLine+" -a").split(" +"));
+
+		try (ZipFile zipFile = new ZipFile(zipToPath.toString())) {
+			assertTrue(zipFile.size()==3, "Root folder, and both files.");
+			assertNotNull(zipFile.getEntry("first"));
+			assertNotNull(zipFile.getEntry("second"));
+		}
+		assertTrue(Files.notExists(AppendRollback.of(zipToPath)), "The rollback should be gone.");
+	}
+
+	@Test
+	void testAppendRestoredOnFailure() throws IOException {
+		Path src = Files.createDirectories(destRootDir.resolve("appendSrc"+System.currentTimeMillis()));
+		Files.writeString(src.resolve("first"), "first");
+		String zipToFile = aFreshZipFilename();
+		String commandLine = "zipp -s "+src+" -d "+destRootDir+" -z "+zipToFile;
+		DirectoryZipper.pipe(commandLine.split(" +"));
+		Path zipToPath = destRootDir.resolve(zipToFile);
+		byte[] before = Files.readAllBytes(zipToPath);
+
+		Files.writeString(src.resolve("second"), "second");
+		Path list = destRootDir.resolve("list"+System.currentTimeMillis());
+		Files.writeString(list, "second\nmissing\n");
+		DirectoryZipper.pipe((commandLine+" -a -fl "+list).split(" +"));
+
+		assertTrue(java.util.Arrays.equals(before, Files.readAllBytes(zipToPath)), 
+				"A failed append should leave the archive as it was.");
+		assertTrue(Files.notExists(AppendRollback.of(zipToPath)), "The rollback should be gone.");
+	}
+
+	@Test
+	void testAppendKeepsForeignFields() throws IOException {
+		Path src = Files.createDirectories(destRootDir.resolve("appendSrc"+System.nanoTime()));
+		Files.writeString(src.resolve("first"), "first");
+		String zipToFile = aFreshZipFilename();
+		Path zipToPath = destRootDir.resolve(zipToFile);
+		// as another tool writes it: an extra field, a comment, and unix permissions made by a unix host
+		byte[] extra = {(byte) 0xFE, (byte) 0xCA, 2, 0, 'x', 'y'};
+		try (java.util.zip.ZipOutputStream zos = new java.util.zip.ZipOutputStream(Files.newOutputStream(zipToPath))) {
+			java.util.zip.ZipEntry entry = new java.util.zip.ZipEntry("first");
+			entry.setExtra(extra);
+			entry.setComment("hi");
+			zos.putNextEntry(entry);
+			zos.write("first".getBytes());
+			zos.closeEntry();
+		}
+		byte[] zip = Files.readAllBytes(zipToPath);
+		java.nio.ByteBuffer cd = java.nio.ByteBuffer.wrap(zip).order(java.nio.ByteOrder.LITTLE_ENDIAN);
+		int header = zip.length-22-cd.getInt(zip.length-22+12);
+		cd.putShort(header+4, (short) 0x0314);
+		cd.putInt(header+38, 0100644<<16);
+		Files.write(zipToPath, zip);
+
+		Files.writeString(src.resolve("second"), "second");
+		DirectoryZipper.pipe(("zipp -s "+src+" -d "+destRootDir+" -z "+zipToFile+" -a").split(" +"));
+
+		try (ZipFile zipFile = new ZipFile(zipToPath.toString())) {
+			assertNotNull(zipFile.getEntry("second"));
+			assertTrue("hi".equals(zipFile.getEntry("first").getComment()), "The comment should be kept.");
+			assertTrue(java.util.Arrays.equals(extra, zipFile.getEntry("first").getExtra()), "The extra field should be kept.");
+		}
+		try (java.nio.channels.FileChannel ch = java.nio.channels.FileChannel.open(zipToPath)) {
+			ZipWriter.Foreign foreign = ZipReader.centralDirectory(ch).entries().get(0).foreign();
+			assertTrue(foreign.versionMadeBy()>>8==3, "Made by unix.");
+			assertTrue(foreign.externalAttributes()==0100644L<<16, "The permissions should be kept.");
+		}
+		assertTrue(Files.notExists(AppendRollback.of(zipToPath)), "The rollback should be gone.");
+	}
+
+	@Test
+	void testRepackKeepsForeignFields() throws IOException {
+		Path repackDir = Files.createDirectories(destRootDir.resolve("repackForeign"+System.nanoTime()));
+		Path input = repackDir.resolve("in.zip");
+		byte[] own = {(byte) 0xFE, (byte) 0xCA, 2, 0, 'x', 'y'};
+		byte[] time = {0x55, 0x54, 5, 0, 1, 0x10, 0x20, 0x30, 0x40};
+		try (java.util.zip.ZipOutputStream zos = new java.util.zip.ZipOutputStream(Files.newOutputStream(input))) {
+			java.util.zip.ZipEntry entry = new java.util.zip.ZipEntry("a.txt");
+			byte[] extra = java.util.Arrays.copyOf(own, own.length+time.length);
+			System.arraycopy(time, 0, extra, own.length, time.length);
+			entry.setExtra(extra);
+			entry.setComment("hi");
+			zos.putNextEntry(entry);
+			zos.write("a".getBytes());
+			zos.closeEntry();
+		}
+		byte[] inputExtra;
+		try (ZipFile zipFile = new ZipFile(input.toFile())) {
+			inputExtra = zipFile.getEntry("a.txt").getExtra();
+		}
+
+		DirectoryZipper.pipe(("zipp -rp "+input+" -d "+repackDir+" -z out.zip").split(" +"));
+		try (ZipFile zipFile = new ZipFile(repackDir.resolve("out.zip").toFile())) {
+			assertTrue("hi".equals(zipFile.getEntry("a.txt").getComment()), "The comment should be kept.");
+			assertTrue(java.util.Arrays.equals(inputExtra, zipFile.getEntry("a.txt").getExtra()), "The extra fields should be kept.");
+		}
+
+		DirectoryZipper.pipe(("zipp -rp "+input+" -d "+repackDir+" -z reproducible.zip -re").split(" +"));
+		try (ZipFile zipFile = new ZipFile(repackDir.resolve("reproducible.zip").toFile())) {
+			assertTrue("hi".equals(zipFile.getEntry("a.txt").getComment()), "The comment should be kept.");
+			assertTrue(java.util.Arrays.equals(own, zipFile.getEntry("a.txt").getExtra()), "The file times should be dropped.");
+		}
+	}
+
+	@Test
+	void testRepack() throws IOException {
+		Path repackDir = Files.createDirectories(destRootDir.resolve("repack"+System.currentTimeMillis()));
+		Path one = Files.createDirectories(repackDir.resolve("one").resolve("sub"));
+		Path two = Files.createDirectories(repackDir.resolve("two").resolve("sub"));
+		Files.writeString(one.resolveSibling("a.txt"), "a of one");
+		Files.writeString(one.resolve("b.txt"), "b of one");
+		Files.writeString(two.resolveSibling("a.txt"), "a of two");
+		Files.writeString(two.resolveSibling("c.log"), "c of two");
+		Files.writeString(two.resolve("d.txt"), "d of two");
+		DirectoryZipper.pipe(("zipp -s "+one.getParent()+" -d "+repackDir+" -z one.zip").split(" +"));
+		DirectoryZipper.pipe(("zipp -s "+two.getParent()+" -d "+repackDir+" -z two.zip").split(" +"));
+		String inputs = repackDir.resolve("one.zip")+" "+repackDir.resolve("two.zip");
+
+		DirectoryZipper.pipe(("zipp -rp "+inputs+" -d "+repackDir+" -z first.zip -e *.log").split(" +"));
+		try (ZipFile zipFile = new ZipFile(repackDir.resolve("first.zip").toFile())) {
+			assertTrue(zipFile.size()==5, "Root and sub folders once, a.txt, b.txt and d.txt -- but "+zipFile.size());
+			assertTrue(new String(zipFile.getInputStream(zipFile.getEntry("a.txt")).readAllBytes()).equals("a of one"),
+					"The first archive's entry should win by default.");
+			assertNull(zipFile.getEntry("c.log"), "Excluded at the root.");
+			assertNotNull(zipFile.getEntry("sub/d.txt"));
+		}
+
+		DirectoryZipper.pipe(("zipp -rp "+inputs+" -d "+repackDir+" -z last.zip -co last -nr").split(" +"));
+		try (ZipFile zipFile = new ZipFile(repackDir.resolve("last.zip").toFile())) {
+			assertTrue(new String(zipFile.getInputStream(zipFile.getEntry("a.txt")).readAllBytes()).equals("a of two"),
+					"The last archive's entry should win.");
+			assertNull(zipFile.getEntry("sub/b.txt"), "No nested entries without recursion.");
+			assertNotNull(zipFile.getEntry("c.log"));
+		}
+
+		DirectoryZipper.pipe(("zipp -rp "+inputs+" -d "+repackDir+" -z fail.zip -co fail").split(" +"));
+		assertTrue(Files.notExists(repackDir.resolve("fail.zip")), "A collision should fail the run.");
+
+		assertThrows(IllegalArgumentException.class, 
+				() -> DirectoryZipper.pipe(("zipp -rp "+inputs+" -d "+repackDir+" -co sometimes").split(" +")));
+	}
+
+	@Test
+	void testReproducible() throws IOException {
+		Path reproDir = Files.createDirectories(destRootDir.resolve("repro"+System.currentTimeMillis()));
+		Path src = Files.createDirectories(reproDir.resolve("src").resolve("sub"));
+		for (String name : new String[] {"b", "a", "c"}) {
+			Files.writeString(src.resolveSibling(name), "root "+name);
+			Files.writeString(src.resolve(name), "sub "+name);
+		}
+		Path out1 = Files.createDirectories(reproDir.resolve("out1"));
+		Path out2 = Files.createDirectories(reproDir.resolve("out2"));
+		DirectoryZipper.pipe(("zipp -s "+src.getParent()+" -d "+out1+" -z same.zip -re").split(" +"));
+		for (String name : new String[] {"a", "b", "c"})
+			Files.setLastModifiedTime(src.resolve(name), java.nio.file.attribute.FileTime.fromMillis(1_000_000_000_000L));
+		DirectoryZipper.pipe(("zipp -s "+src.getParent()+" -d "+out2+" -z same.zip -re").split(" +"));
+
+		assertTrue(java.util.Arrays.equals(Files.readAllBytes(out1.resolve("same.zip")), Files.readAllBytes(out2.resolve("same.zip"))),
+				"The same content should give the same bytes, whatever the file times.");
+		try (ZipFile zipFile = new ZipFile(out1.resolve("same.zip").toFile())) {
+			assertTrue(zipFile.stream().map(e -> e.getName()).toList()
+					.equals(java.util.List.of("/", "a", "b", "c", "sub/", "sub/a", "sub/b", "sub/c")),
+					"Entries should be sorted by name.");
+		}
+
+		// named after the fingerprint -- and reused while the tree stays the same
+		DirectoryZipper.pipe(("zipp -s "+src.getParent()+" -d "+out2+" -re").split(" +"));
+		DirectoryZipper.pipe(("zipp -s "+src.getParent()+" -d "+out2+" -re").split(" +"));
+		assertTrue(getDirContents(out2).size()==2, "One fingerprint-named archive besides same.zip.");
+	}
+
+	@Test
+	void testReproducibleFileList() throws IOException {
+		Path src = Files.createDirectories(destRootDir.resolve("reproList"+System.nanoTime()));
+		Files.createDirectories(src.resolve("sub"));
+		for (String name : new String[] {"b", "a", "sub/c"})
+			Files.writeString(src.resolve(name), name);
+		Path list1 = Files.writeString(src.resolveSibling(src.getFileName()+".list1"), "b\nsub/c\na\n");
+		Path list2 = Files.writeString(src.resolveSibling(src.getFileName()+".list2"), "sub/c\na\nb\n");
+		String commandLine = "zipp -s "+src+" -d "+destRootDir+" -re -fl ";
+		String zip1 = src.getFileName()+"_1.zip", zip2 = src.getFileName()+"_2.zip";
+		DirectoryZipper.pipe((commandLine+list1+" -z "+zip1).split(" +"));
+		DirectoryZipper.pipe((commandLine+list2+" -z "+zip2).split(" +"));
+
+		assertTrue(java.util.Arrays.equals(Files.readAllBytes(destRootDir.resolve(zip1)), Files.readAllBytes(destRootDir.resolve(zip2))),
+				"The same files listed in another order should give the same bytes.");
+		try (ZipFile zipFile = new ZipFile(destRootDir.resolve(zip1).toFile())) {
+			assertTrue(zipFile.stream().map(e -> e.getName()).toList().equals(java.util.List.of("a", "b", "sub/c")),
+					"Listed entries should be sorted by name.");
+		}
+	}
+
+	@Test
+	void testCache() throws IOException {
+		Path cacheDir = Files.createDirectories(destRootDir.resolve("cache"+System.currentTimeMillis()));
+		Path src = Files.createDirectories(cacheDir.resolveSibling("cacheSrc"+System.currentTimeMillis()));
+		Files.writeString(src.resolve("a.txt"), "a");
+		java.nio.file.attribute.FileTime srcTime = Files.getLastModifiedTime(src);
+		String commandLine = "zipp -s "+src+" -d "+destRootDir+" -ca "+cacheDir+" -z ";
+
+		DirectoryZipper.pipe((commandLine+"cached1.zip").split(" +"));
+		assertTrue(getDirContents(cacheDir).size()==1, "The archive should be cached.");
+		// a cache hit copies the cached archive -- prove it by planting another one there
+		Path cached = Files.list(cacheDir).findFirst().get();
+		Files.writeString(src.resolve("b.txt"), "b");
+		DirectoryZipper.pipe((commandLine+"planted.zip").split(" +"));
+		Files.delete(src.resolve("b.txt"));
+		Files.setLastModifiedTime(src, srcTime);
+		Files.copy(destRootDir.resolve("planted.zip"), cached, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+
+		DirectoryZipper.pipe((commandLine+"cached2.zip").split(" +"));
+		try (ZipFile zipFile = new ZipFile(destRootDir.resolve("cached2.zip").toFile())) {
+			assertNotNull(zipFile.getEntry("b.txt"), "The cached archive should be reused, not rebuilt.");
+		}
+		DirectoryZipper.pipe((commandLine+"paced.zip -rl 20M -wl 20M -bo").split(" +"));
+		try (ZipFile zipFile = new ZipFile(destRootDir.resolve("paced.zip").toFile())) {
+			assertNotNull(zipFile.getEntry("b.txt"), "The pace is no part of the fingerprint.");
+		}
+
+		DirectoryZipper.pipe((commandLine+"cached3.zip -e *.txt").split(" +"));
+		try (ZipFile zipFile = new ZipFile(destRootDir.resolve("cached3.zip").toFile())) {
+			assertNull(zipFile.getEntry("a.txt"), "Other switches -- another fingerprint.");
+		}
+
+		assertThrows(IllegalArgumentException.class, 
+				() -> DirectoryZipper.pipe((commandLine+"cached4.zip -a").split(" +")));
+	}
+
+	@Test
+	void testMultipleSources() throws IOException {
+		Path multiDir = Files.createDirectories(destRootDir.resolve("multi"+System.currentTimeMillis()));
+		Path a = Files.createDirectories(multiDir.resolve("a").resolve("sub"));
+		Path b = Files.createDirectories(multiDir.resolve("b"));
+		Path logs = Files.createDirectories(multiDir.resolve("other").resolve("logs"));
+		Files.writeString(a.resolveSibling("a1.txt"), "a1");
+		Files.writeString(a.resolve("a2.txt"), "a2");
+		for (int i=0; i<200; i++)
+			Files.writeString(b.resolve("b"+i+".txt"), "b"+i);
+		Files.writeString(logs.resolve("app.log"), "log");
+
+		DirectoryZipper.pipe(("zipp -s "+a.getParent()+" "+b+"=data/b "+logs+" -d "+multiDir+" -z multi.zip").split(" +"));
+		try (ZipFile zipFile = new ZipFile(multiDir.resolve("multi.zip").toFile())) {
+			assertTrue(zipFile.size()==3+200+4, "Three roots, 200+3 files, one sub folder -- but "+zipFile.size());
+			assertNotNull(zipFile.getEntry("a/"));
+			assertNotNull(zipFile.getEntry("a/a1.txt"));
+			assertNotNull(zipFile.getEntry("a/sub/a2.txt"));
+			assertNotNull(zipFile.getEntry("data/b/b199.txt"));
+			assertTrue(new String(zipFile.getInputStream(zipFile.getEntry("logs/app.log")).readAllBytes()).equals("log"));
+		}
+
+		DirectoryZipper.pipe(("zipp -s "+a.getParent()+"=x -d "+multiDir+" -z prefixed.zip -nr").split(" +"));
+		try (ZipFile zipFile = new ZipFile(multiDir.resolve("prefixed.zip").toFile())) {
+			assertNotNull(zipFile.getEntry("x/a1.txt"), "A single root may take a prefix too.");
+			assertNull(zipFile.getEntry("x/sub/"));
+		}
+
+		// a Hive-style partition folder -- the '=' is part of its name
+		Path partition = Files.createDirectories(multiDir.resolve("dt=2024"));
+		Files.writeString(partition.resolve("p.txt"), "p");
+		DirectoryZipper.pipe(("zipp -s "+partition+" -d "+multiDir+" -z partition.zip").split(" +"));
+		try (ZipFile zipFile = new ZipFile(multiDir.resolve("partition.zip").toFile())) {
+			assertNotNull(zipFile.getEntry("p.txt"), "A folder named with '=' is not split into folder and prefix.");
+		}
+		DirectoryZipper.pipe(("zipp -s "+partition+" "+partition+"=copy -d "+multiDir+" -z partitions.zip").split(" +"));
+		try (ZipFile zipFile = new ZipFile(multiDir.resolve("partitions.zip").toFile())) {
+			assertNotNull(zipFile.getEntry("dt=2024/p.txt"), "Named after the folder, '=' and all.");
+			assertNotNull(zipFile.getEntry("copy/p.txt"), "A prefix still goes after the last '='.");
+		}
+
+		assertThrows(IllegalArgumentException.class, () -> DirectoryZipper.pipe(
+				("zipp -s "+a.getParent()+"=x "+b+"=x/b -d "+multiDir).split(" +")), "Prefixes inside one another.");
+		assertThrows(IllegalArgumentException.class, () -> DirectoryZipper.pipe(
+				("zipp -s "+a.getParent()+" "+multiDir.resolve("missing")+" -d "+multiDir).split(" +")), "A missing root.");
+		assertThrows(IllegalArgumentException.class, () -> DirectoryZipper.pipe(
+				("zipp -s "+a.getParent()+" "+b+" -d "+multiDir+" -fl -").split(" +")));
+	}
+
+	@Test
+	void testOtherFileSystems() throws IOException {
+		Path fsDir = Files.createDirectories(destRootDir.resolve("fs"+System.currentTimeMillis()));
+		Path tree = Files.createDirectories(fsDir.resolve("tree").resolve("a").resolve("sub"));
+		Files.writeString(tree.resolve("a2.txt"), "a2");
+		Files.writeString(tree.resolveSibling("a1.txt"), "a1");
+		Files.writeString(tree.resolveSibling("a1.tmp"), "a1");
+		Files.writeString(tree.resolve("a3.tmp"), "skipped");
+		Path b = Files.createDirectories(fsDir.resolve("b"));
+		Files.writeString(b.resolve("b.txt"), "b");
+		DirectoryZipper.pipe(("zipp -s "+tree.getParent().getParent()+" -d "+fsDir+" -z old.zip").split(" +"));
+
+		// a folder of an existing archive, through zipfs -- next to one of the default file system
+		String inZip = "jar:"+fsDir.resolve("old.zip").toUri()+"!/a";
+		DirectoryZipper.pipe(("zipp -s "+inZip+"=from-zip "+b+" -d "+fsDir+" -z new.zip -de *.tmp").split(" +"));
+		try (ZipFile zipFile = new ZipFile(fsDir.resolve("new.zip").toFile())) {
+			assertTrue(zipFile.size()==2+1+4, "Two roots, sub, and 4 files -- but "+zipFile.size());
+			assertNotNull(zipFile.getEntry("from-zip/sub/"));
+			assertTrue(new String(zipFile.getInputStream(zipFile.getEntry("from-zip/sub/a2.txt")).readAllBytes()).equals("a2"));
+			assertNull(zipFile.getEntry("from-zip/sub/a3.tmp"), "The filters apply on any file system.");
+			assertNotNull(zipFile.getEntry("from-zip/a1.tmp"), "-DE is for sub folders only.");
+			assertNotNull(zipFile.getEntry("b/b.txt"));
+		}
+		assertThrows(IllegalArgumentException.class, () -> DirectoryZipper.pipe(
+				("zipp -s "+inZip+" -d "+fsDir+" -w 1").split(" +")), "No watching inside an archive.");
+
+		// the attributes listed with a path spare reading them
+		BasicFileAttributes listed = Files.readAttributes(b, BasicFileAttributes.class);
+		Path real = b.resolve("b.txt");
+		Path attributed = (Path) Proxy.newProxyInstance(getClass().getClassLoader(), 
+				new Class<?>[] {Path.class, AttributedPath.class}, 
+				(proxy, method, args) -> method.getName().equals("listedAttributes") ? listed : method.invoke(real, args));
+		assertTrue(DirectoryZipper.attributes(attributed)==listed);
+		assertTrue(DirectoryZipper.attributes(real).isRegularFile());
+	}
+
+	@Test
+	void testColonInFolderName() throws IOException {
+		Path fsDir = Files.createDirectories(destRootDir.resolve("colon"+System.currentTimeMillis()));
+		// a relative folder whose name looks like the start of a URI
+		Path local = Files.createDirectories(Paths.get("run:"+System.nanoTime()));
+		try {
+			Files.writeString(local.resolve("a.txt"), "a");
+			DirectoryZipper.pipe(("zipp -s "+local+" -d "+fsDir+" -z colon.zip").split(" +"));
+			try (ZipFile zipFile = new ZipFile(fsDir.resolve("colon.zip").toFile())) {
+				assertNotNull(zipFile.getEntry("a.txt"), "An existing folder is a folder, colon or not.");
+			}
+		} finally {
+			Files.deleteIfExists(local.resolve("a.txt"));
+			Files.deleteIfExists(local);
+		}
+		assertThrows(IllegalArgumentException.class, () -> DirectoryZipper.pipe(
+				("zipp -s nosuchscheme:"+System.nanoTime()+" -d "+fsDir).split(" +")), "No provider for the scheme.");
+		assertThrows(IllegalArgumentException.class, () -> DirectoryZipper.pipe(
+				("zipp -s nosuchscheme:/x -d "+fsDir).split(" +")));
+	}
+
 }
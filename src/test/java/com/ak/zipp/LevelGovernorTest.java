@@ -0,0 +1,85 @@
+package com.ak.zipp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class LevelGovernorTest {
+
+	@TempDir
+	static Path sourceRootDir;
+
+	@TempDir
+	static Path destRootDir;
+
+	@BeforeAll
+	static void setup() throws IOException {
+		Files.createDirectories(sourceRootDir.resolve("d"));
+		for (int i=0; i<20; i++)
+			Files.writeString(sourceRootDir.resolve("d").resolve("f"+i+".txt"), ("line "+i+"\n").repeat(5000));
+	}
+
+	@Test
+	void testParseBudget() {
+		assertEquals(Duration.ofSeconds(90), LevelGovernor.parseBudget("90"));
+		assertEquals(Duration.ofSeconds(90), LevelGovernor.parseBudget("90s"));
+		assertEquals(Duration.ofMinutes(30), LevelGovernor.parseBudget("30m"));
+		assertEquals(Duration.ofHours(2), LevelGovernor.parseBudget("2H"));
+		assertEquals(Duration.ofMinutes(90), LevelGovernor.parseBudget("PT1H30M"));
+		assertThrows(IllegalArgumentException.class, () -> LevelGovernor.parseBudget("soon"));
+	}
+
+	@Test
+	void testBehindGoesFaster() throws InterruptedException {
+		LevelGovernor governor = new LevelGovernor(Duration.ofSeconds(1), 1L<<40);
+		governor.entryDone("a", 1000, 1000);
+		assertEquals(LevelGovernor.START_LEVEL, governor.level(), "No change inside a window.");
+
+		Thread.sleep(TimeUnit.NANOSECONDS.toMillis(LevelGovernor.WINDOW_NANOS)+10);
+		governor.entryDone("b", 2000, 1000);
+		assertEquals(LevelGovernor.START_LEVEL-1, governor.level(), "A terabyte in a second -- far behind.");
+		List<ZipResult.LevelChange> changes = governor.changes();
+		assertEquals(2, changes.size());
+		assertTrue(changes.get(0).reason().startsWith("start:"), changes.get(0).reason());
+		assertTrue(changes.get(1).reason().startsWith("behind after b"), changes.get(1).reason());
+	}
+
+	@Test
+	void testAheadGoesBetter() throws InterruptedException {
+		LevelGovernor governor = new LevelGovernor(Duration.ofHours(1), 2000);
+		Thread.sleep(TimeUnit.NANOSECONDS.toMillis(LevelGovernor.WINDOW_NANOS)+10);
+		governor.entryDone("a", 1000, 1000);
+		assertEquals(LevelGovernor.START_LEVEL+1, governor.level(), "A kilobyte left in an hour -- far ahead.");
+		assertEquals(1000, governor.changes().get(1).bytesDone());
+	}
+
+	@Test
+	void testDeadlineRun() throws Exception {
+		String zipToFile = "deadline.zip";
+		ZipResult result = DirectoryZipper.submit(("zipp -s "+sourceRootDir+" -d "+destRootDir+" -z "+zipToFile+" -dl 1h").split(" +"))
+				.result().get(10, TimeUnit.SECONDS);
+		assertEquals(LevelGovernor.START_LEVEL, result.levels().get(0).level());
+		assertTrue(result.levels().get(0).reason().contains(result.bytes()+" bytes"), result.levels().get(0).reason());
+		try (ZipFile zipFile = new ZipFile(destRootDir.resolve(zipToFile).toFile())) {
+			assertEquals(22, zipFile.size(), "The root folder, d, and the 20 files.");
+		}
+
+		assertTrue(DirectoryZipper.submit(("zipp -s "+sourceRootDir+" -d "+destRootDir+" -z no-deadline.zip")
+				.split(" +")).result().get(10, TimeUnit.SECONDS).levels().isEmpty(), "No deadline, no levels.");
+		assertThrows(IllegalArgumentException.class,
+				() -> DirectoryZipper.submit(("zipp -s "+sourceRootDir+" -d "+destRootDir+" -dl 1h -re").split(" +")));
+	}
+
+}
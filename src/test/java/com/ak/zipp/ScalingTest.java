@@ -0,0 +1,231 @@
+package com.ak.zipp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipFile;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+/**
+ * End-to-end scaling suite -- run with {@code mvn -Pscaling test}, left out of the default build.
+ *
+ * <p>For each size of {@code zipp.scaling.sizes} a synthetic tree is generated -- folders of
+ * varied depth and fan-out, a tenth of the files excluded by the filters -- and zipped by
+ * {@link DirectoryZipper} on the test thread. The run has budgets, per file zipped, on the
+ * wall-clock time, the peak live heap and the bytes allocated, and one on the allocation rate.
+ * The live heap is the heap in use after each collection during the run -- what the run
+ * holds on to, its garbage left out -- and its budget fits well within the suite's
+ * {@code -Xmx1g} at 10^6 files, so a run holding more than that per file fails rather than
+ * running out of memory. The bytes allocated are those of all threads, the zipper's own too.
+ * Each passing run is appended to {@code zipp.scaling.history}; a run slower than the median
+ * of the last {@link #HISTORY_RUNS} of its size, on the same host, by more than
+ * {@code zipp.scaling.tolerance}, fails -- so does a slowdown that stays within the budgets.</p>
+ */
+@Tag("scaling")
+public class ScalingTest {
+
+	static final int HISTORY_RUNS = 5;
+
+	// the budgets -- generous, so as to catch blow-ups rather than noise
+	static final long MICROS_PER_FILE = Long.getLong("zipp.scaling.microsPerFile", 500);
+	static final long HEAP_BASE_BYTES = Long.getLong("zipp.scaling.heapBaseBytes", 32L * 1024 * 1024);
+	static final long HEAP_BYTES_PER_FILE = Long.getLong("zipp.scaling.heapBytesPerFile", 512);
+	static final long ALLOCATED_BYTES_PER_FILE = Long.getLong("zipp.scaling.allocatedBytesPerFile", 16 * 1024);
+	static final long ALLOCATED_BYTES_PER_SECOND = Long.getLong("zipp.scaling.allocatedBytesPerSecond", 1024L * 1024 * 1024);
+	static final double TOLERANCE = Double.parseDouble(System.getProperty("zipp.scaling.tolerance", "1.5"));
+
+	@TempDir
+	Path workDir;
+
+	@Test
+	void testScaling() throws Exception {
+		int[] sizes = Arrays.stream(System.getProperty("zipp.scaling.sizes", "10000,100000,1000000").split(","))
+				.map(String::trim).mapToInt(Integer::parseInt).toArray();
+		Path history = Paths.get(System.getProperty("zipp.scaling.history", "scaling-history.tsv"));
+		for (int files : sizes) {
+			Path source = Files.createDirectories(workDir.resolve("src"+files));
+			Path dest = Files.createDirectories(workDir.resolve("dst"+files));
+			long expectedEntries = generate(source, files, new Random(files));
+			Result r = zip(source, dest);
+
+			assertEquals(expectedEntries, r.entries, files+" files: the entry count");
+			assertTrue(r.millis*1000 <= MICROS_PER_FILE*files,
+					files+" files: "+r.millis+" ms is over the budget of "+MICROS_PER_FILE+" micros a file");
+			assertTrue(r.peakHeap <= HEAP_BASE_BYTES + HEAP_BYTES_PER_FILE*files,
+					files+" files: a peak live heap of "+r.peakHeap+" bytes is over the budget of "
+							+HEAP_BASE_BYTES+" plus "+HEAP_BYTES_PER_FILE+" a file");
+			assertTrue(r.allocated <= ALLOCATED_BYTES_PER_FILE*files,
+					files+" files: "+r.allocated/files+" bytes allocated a file is over the budget of "+ALLOCATED_BYTES_PER_FILE);
+			assertTrue(r.allocated*1000/Math.max(1, r.millis) <= ALLOCATED_BYTES_PER_SECOND,
+					files+" files: allocating "+r.allocated*1000/Math.max(1, r.millis)+" bytes a second is over the budget");
+
+			long baseline = baseline(history, r);
+			assertTrue(baseline<0 || r.millis <= baseline*TOLERANCE,
+					files+" files: "+r.millis+" ms, against a median of "+baseline+" ms over the last runs");
+			Files.createDirectories(history.toAbsolutePath().getParent());
+			Files.writeString(history, r.line()+System.lineSeparator(), StandardCharsets.UTF_8,
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+
+			delete(source);
+			delete(dest);
+		}
+	}
+
+	/**
+	 * Generates {@code files} files, 0 to 63 bytes each, over folders of varied depth and fan-out:
+	 * every so often a new folder is made under a random one, and each file goes into a random
+	 * folder -- so some folders fill up, and others stay near-empty.
+	 *
+	 * @return the entries the zipping has to write -- the {@code .tmp} files left out
+	 */
+	static long generate(Path root, int files, Random random) throws IOException {
+		List<Path> dirs = new ArrayList<>(List.of(root));
+		List<Integer> depths = new ArrayList<>(List.of(0));
+		long entries = 1;  // the root
+		byte[] content = new byte[64];
+		for (int i=0; i<files; i++) {
+			if (random.nextInt(20)==0) {
+				int parent = random.nextInt(dirs.size());
+				if (depths.get(parent)<12) {
+					dirs.add(Files.createDirectory(dirs.get(parent).resolve("d"+dirs.size())));
+					depths.add(depths.get(parent)+1);
+					entries++;
+				}
+			}
+			Path dir = dirs.get(random.nextInt(dirs.size()));
+			boolean excluded = random.nextInt(10)==0;
+			random.nextBytes(content);
+			Files.write(dir.resolve("f"+i+(excluded ? ".tmp" : ".txt")), Arrays.copyOf(content, random.nextInt(content.length)));
+			if (!excluded)
+				entries++;
+		}
+		return entries;
+	}
+
+	record Result(int files, long entries, long millis, long peakHeap, long allocated) {
+
+		String line() {
+			String host;
+			try {
+				host = InetAddress.getLocalHost().getHostName();
+			} catch (IOException e) {
+				host = "unknown";
+			}
+			return String.join("\t", Instant.now().toString(), host, System.getProperty("java.version"),
+					String.valueOf(files), String.valueOf(entries), String.valueOf(millis),
+					String.valueOf(peakHeap), String.valueOf(allocated));
+		}
+
+		static Result parse(String line) {
+			String[] f = line.split("\t");
+			return new Result(Integer.parseInt(f[3]), Long.parseLong(f[4]), Long.parseLong(f[5]),
+					Long.parseLong(f[6]), Long.parseLong(f[7]));
+		}
+	}
+
+	static Result zip(Path source, Path dest) throws Exception {
+		System.gc();
+		List<MemoryPoolMXBean> heap = ManagementFactory.getMemoryPoolMXBeans().stream()
+				.filter(p -> p.getType()==MemoryType.HEAP).toList();
+		heap.forEach(MemoryPoolMXBean::resetPeakUsage);
+		Set<String> heapPools = heap.stream().map(MemoryPoolMXBean::getName).collect(Collectors.toSet());
+		AtomicLong peakLive = new AtomicLong();
+		NotificationListener afterGc = (n, handback) -> {
+			if (!n.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION))
+				return;
+			GcInfo gc = GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData()).getGcInfo();
+			long live = gc.getMemoryUsageAfterGc().entrySet().stream()
+					.filter(u -> heapPools.contains(u.getKey()))
+					.mapToLong(u -> u.getValue().getUsed()).sum();
+			peakLive.accumulateAndGet(live, Math::max);
+		};
+		List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+		for (GarbageCollectorMXBean c : collectors)
+			((NotificationEmitter) c).addNotificationListener(afterGc, null, null);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long allocatedBefore = threads.getTotalThreadAllocatedBytes();
+		long start = System.nanoTime();
+
+		String[] args = ("zipp -s "+source+" -d "+dest+" -z scaling.zip -de *.tmp -e *.tmp").split(" +");
+		ZipResult result;
+		try {
+			result = DirectoryZipper.submit(args, Runnable::run, false).result().join();
+		} finally {
+			for (GarbageCollectorMXBean c : collectors)
+				((NotificationEmitter) c).removeNotificationListener(afterGc);
+		}
+
+		long millis = (System.nanoTime()-start)/1_000_000;
+		long allocated = threads.getTotalThreadAllocatedBytes()-allocatedBefore;
+		// a run too short for a collection holds no more than the heap it peaked at
+		long peakHeap = peakLive.get()>0 ? peakLive.get() 
+				: heap.stream().mapToLong(p -> p.getPeakUsage().getUsed()).sum();
+		try (ZipFile zipFile = new ZipFile(result.zipFile().toFile())) {
+			assertEquals(result.entries(), zipFile.size());
+		}
+		String files = source.getFileName().toString().substring("src".length());
+		return new Result(Integer.parseInt(files), result.entries(), millis, peakHeap, allocated);
+	}
+
+	/**
+	 * The median time of the last runs of the same size on this host -- or -1 if there is no history yet.
+	 */
+	static long baseline(Path history, Result r) throws IOException {
+		if (!Files.exists(history))
+			return -1;
+		String host = r.line().split("\t")[1];
+		List<Long> times;
+		try (Stream<String> lines = Files.lines(history)) {
+			times = lines.filter(l -> !l.isBlank())
+					.filter(l -> l.split("\t")[1].equals(host))
+					.map(Result::parse)
+					.filter(past -> past.files==r.files)
+					.map(Result::millis)
+					.toList();
+		}
+		if (times.isEmpty())
+			return -1;
+		List<Long> last = new ArrayList<>(times.subList(Math.max(0, times.size()-HISTORY_RUNS), times.size()));
+		last.sort(Comparator.naturalOrder());
+		return last.get(last.size()/2);
+	}
+
+	static void delete(Path dir) throws IOException {
+		try (Stream<Path> paths = Files.walk(dir)) {
+			for (Path p : paths.sorted(Comparator.reverseOrder()).toList())
+				Files.delete(p);
+		}
+	}
+
+}
@@ -8,13 +8,13 @@ public class SwitchTest {
 
     @Test
     void testAllNamesDashed() {
-        Set<String> expected = Set.of("-SRCDIR", "-DSTDIR", "-INCLUDE", "-EXCLUDE", "-DEEPINCLUDE", "-DEEPEXCLUDE", "-NORECURSE", "-ZIPFILE");
+        Set<String> expected = Set.of("-SRCDIR", "-DSTDIR", "-INCLUDE", "-EXCLUDE", "-DEEPINCLUDE", "-DEEPEXCLUDE", "-NORECURSE", "-ZIPFILE", "-FILELIST", "-JOURNAL", "-RESUME", "-WATCH", "-APPEND", "-REPACK", "-COLLISION", "-REPRODUCIBLE", "-CACHE", "-READLIMIT", "-WRITELIMIT", "-BACKOFF", "-PLAN", "-DIGEST", "-DEADLINE");
         assertEquals(expected, Switch.allNamesDashed());
     }
 
     @Test
     void testAllShortNamesDashed() {
-        Set<String> expected = Set.of("-S", "-D", "-I", "-E", "-DI", "-DE", "-NR", "-Z");
+        Set<String> expected = Set.of("-S", "-D", "-I", "-E", "-DI", "-DE", "-NR", "-Z", "-FL", "-J", "-RS", "-W", "-A", "-RP", "-CO", "-RE", "-CA", "-RL", "-WL", "-BO", "-PL", "-DG", "-DL");
         assertEquals(expected, Switch.allShortNamesDashed());
     }
 
@@ -40,6 +40,33 @@ public class SwitchTest {
     @Test
     void testIsMultiValued() {
         assertTrue(Switch.INCLUDE.isMultiValued());
-        assertFalse(Switch.SRCDIR.isMultiValued());
+        assertTrue(Switch.SRCDIR.isMultiValued());
+        assertFalse(Switch.DSTDIR.isMultiValued());
+        assertTrue(Switch.REPACK.isMultiValued());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testTakesFileNamesOnly() {
+        assertTrue(Switch.DEEPEXCLUDE.takesFileNamesOnly());
+        assertTrue(Switch.ZIPFILE.takesFileNamesOnly());
+        assertFalse(Switch.REPACK.takesFileNamesOnly());
+    }
+
+    @Test
+    void testIsNoArg() {
+        assertTrue(Switch.NORECURSE.isNoArg());
+        assertTrue(Switch.RESUME.isNoArg());
+        assertTrue(Switch.REPRODUCIBLE.isNoArg());
+        assertFalse(Switch.ZIPFILE.isNoArg());
+        assertFalse(Switch.CACHE.isNoArg());
+    }
+
+    @Test
+    void testIsOptionalArg() {
+        assertTrue(Switch.WATCH.isOptionalArg());
+        assertTrue(Switch.CACHE.isOptionalArg());
+        assertTrue(Switch.DIGEST.isOptionalArg());
+        assertFalse(Switch.WATCH.isNoArg());
+        assertFalse(Switch.SRCDIR.isOptionalArg());
+    }
+}
@@ -0,0 +1,118 @@
+package com.ak.zipp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipFile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ThrottleTest {
+
+	@TempDir
+	static Path tempDir;
+
+	@Test
+	void testParseRate() {
+		assertEquals(500, Throttle.parseRate("500"));
+		assertEquals(500L << 10, Throttle.parseRate("500k"));
+		assertEquals(20L << 20, Throttle.parseRate("20MB"));
+		assertEquals(1L << 30, Throttle.parseRate("1G/s"));
+		assertThrows(IllegalArgumentException.class, () -> Throttle.parseRate("fast"));
+		assertThrows(IllegalArgumentException.class, () -> Throttle.parseRate("0M"));
+		assertThrows(IllegalArgumentException.class, () -> Throttle.parseRate("9000000000G"), "Overflows a long.");
+		assertThrows(IllegalArgumentException.class, () -> Throttle.parseRate("99999999999999999999"), "Overflows a long.");
+	}
+
+	@Test
+	void testReadsArePaced() throws IOException {
+		byte[] data = new byte[512 * 1024];
+		Throttle throttle = new Throttle(1 << 20, 0, false);
+		long start = System.nanoTime();
+		try (InputStream in = throttle.reading(new ByteArrayInputStream(data))) {
+			assertArrayEquals(data, in.readAllBytes());
+		}
+		long millis = (System.nanoTime()-start) / 1_000_000;
+		// 512K at 1M/s, less the 100ms burst
+		assertTrue(millis>=350 && millis<3000, "Took "+millis+"ms");
+	}
+
+	@Test
+	void testWritesArePaced() throws IOException {
+		Throttle throttle = new Throttle(0, 1 << 20, false);
+		ByteArrayOutputStream sink = new ByteArrayOutputStream();
+		long start = System.nanoTime();
+		try (OutputStream out = throttle.writing(sink)) {
+			for (int i=0; i<8; i++)
+				out.write(new byte[64 * 1024]);
+		}
+		long millis = (System.nanoTime()-start) / 1_000_000;
+		assertEquals(512 * 1024, sink.size());
+		assertTrue(millis>=350 && millis<3000, "Took "+millis+"ms");
+	}
+
+	@Test
+	void testCancelledWhilePaced() throws IOException {
+		java.util.concurrent.atomic.AtomicBoolean cancelled = new java.util.concurrent.atomic.AtomicBoolean();
+		Throttle throttle = new Throttle(0, 1024, false, () -> {
+			if (cancelled.get())
+				throw new java.util.concurrent.CancellationException("Zip job cancelled");
+		});
+		OutputStream out = throttle.writing(new ByteArrayOutputStream());
+		new Thread(() -> {
+			try {
+				Thread.sleep(200);
+			} catch (InterruptedException e) { /* cancel now */ }
+			cancelled.set(true);
+		}).start();
+		long start = System.nanoTime();
+		// a minute's debt at 1K/s
+		assertThrows(java.util.concurrent.CancellationException.class, () -> out.write(new byte[60 * 1024]));
+		long millis = (System.nanoTime()-start) / 1_000_000;
+		assertTrue(millis<2000, "Cancelled after "+millis+"ms -- the pause should stop within a slice");
+	}
+
+	@Test
+	void testNoLimitsNoWrapping() {
+		InputStream in = new ByteArrayInputStream(new byte[1]);
+		assertTrue(Throttle.NONE.reading(in)==in);
+	}
+
+	@Test
+	void testBackoff() {
+		Throttle.Backoff backoff = new Throttle.Backoff();
+		for (int i=0; i<50; i++)
+			assertEquals(0, backoff.pauseAfter(2_000_000), "No pause at the usual latency.");
+		long pause = 0;
+		for (int i=0; i<10; i++)
+			pause = backoff.pauseAfter(20_000_000);
+		assertEquals((long) (Throttle.Backoff.MAX_FACTOR * 20_000_000), pause, "Backed off in full while the latency is up.");
+		for (int i=0; i<20; i++)
+			pause = backoff.pauseAfter(2_000_000);
+		assertEquals(0, pause, "Back to full speed once it is down.");
+	}
+
+	@Test
+	void testThrottledRun() throws IOException {
+		Path src = Files.createDirectories(tempDir.resolve("src"));
+		Files.write(src.resolve("a.bin"), new byte[256 * 1024]);
+		DirectoryZipper.pipe(("zipp -s "+src+" -d "+tempDir+" -z throttled.zip -rl 100M -wl 100M -bo").split(" +"));
+		try (ZipFile zipFile = new ZipFile(tempDir.resolve("throttled.zip").toFile())) {
+			assertEquals(256 * 1024, zipFile.getEntry("a.bin").getSize());
+		}
+
+		assertThrows(IllegalArgumentException.class,
+				() -> DirectoryZipper.pipe(("zipp -s "+src+" -d "+tempDir+" -rl fast").split(" +")));
+	}
+
+}
@@ -0,0 +1,212 @@
+package com.ak.zipp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ZipJobSchedulerTest {
+
+	@TempDir
+	static Path sourceRootDir;
+
+	@TempDir
+	static Path destRootDir;
+
+	@BeforeAll
+	static void setup() throws IOException {
+		byte[] noise = new byte[1024 * 1024];
+		new Random(0).nextBytes(noise);
+		Files.createDirectories(sourceRootDir.resolve("big"));
+		Files.write(sourceRootDir.resolve("big").resolve("noise.bin"), noise);
+		Files.createDirectories(sourceRootDir.resolve("small"));
+		Files.writeString(sourceRootDir.resolve("small").resolve("a.txt"), "apple");
+	}
+
+	static final AtomicInteger archives = new AtomicInteger();
+
+	String[] command(String dir, String more) {
+		return ("zipp -s "+sourceRootDir.resolve(dir)+" -d "+destRootDir
+				+" -z scheduled"+archives.incrementAndGet()+".zip "+more).trim().split(" +");
+	}
+
+	// holds a worker for many seconds -- the megabyte goes out at 64K a second
+	ZipJob blocker(ZipJobScheduler scheduler) throws InterruptedException {
+		ZipJob blocker = scheduler.submit("blocker", command("big", "-wl 64K"));
+		await(() -> scheduler.stats().running()==1);
+		return blocker;
+	}
+
+	// the jobs are sized, and queued, on the planner thread
+	static void await(BooleanSupplier condition) throws InterruptedException {
+		long until = System.nanoTime()+TimeUnit.SECONDS.toNanos(10);
+		while (!condition.getAsBoolean() && System.nanoTime()<until)
+			Thread.sleep(10);
+	}
+
+	@Test
+	void testFairShare() throws Exception {
+		ZipJobScheduler scheduler = new ZipJobScheduler(1, 64 * 1024 * 1024, 0, 0, 0);
+		try {
+			ZipJob blocker = blocker(scheduler);
+			List<String> order = new CopyOnWriteArrayList<>();
+			List<ZipJob> jobs = new ArrayList<>();
+			for (int i=0; i<6; i++)
+				jobs.add(scheduler.submit("a", command("small", "")));
+			for (int i=0; i<2; i++)
+				jobs.add(scheduler.submit("b", command("small", "")));
+			for (int i=0; i<jobs.size(); i++) {
+				String tenant = i<6 ? "a" : "b";
+				jobs.get(i).result().thenRun(() -> order.add(tenant));
+			}
+
+			await(() -> scheduler.stats().queued()==8);
+			ZipJobScheduler.Stats stats = scheduler.stats();
+			assertEquals(8, stats.queued());
+			assertEquals(6, (int) stats.queuedByTenant().get("a"));
+			assertEquals(2, (int) stats.queuedByTenant().get("b"));
+			assertEquals(1, stats.running());
+
+			blocker.cancel();
+			for (ZipJob job : jobs)
+				job.result().get(10, TimeUnit.SECONDS);
+			assertEquals(List.of("a", "b", "a", "b", "a", "a", "a", "a"), order,
+					"b's jobs shouldn't wait behind all of a's.");
+			stats = scheduler.stats();
+			assertEquals(0, stats.queued());
+			assertEquals(9, stats.started(), "The blocker, and the 8 jobs.");
+			assertTrue(stats.maxWait().compareTo(Duration.ZERO)>0);
+		} finally {
+			scheduler.destroy();
+		}
+	}
+
+	@Test
+	void testSmallJobsOvertake() throws Exception {
+		ZipJobScheduler scheduler = new ZipJobScheduler(2, 10_000, 0, 0, 0);
+		try {
+			ZipJob blocker = blocker(scheduler);
+			ZipJob large = scheduler.submit("a", command("big", ""), 10, null);
+			ZipJob small = scheduler.submit("a", command("small", ""));
+
+			small.result().get(10, TimeUnit.SECONDS);
+			assertFalse(large.result().isDone(), "The large job should wait for the large one running.");
+			ZipJobScheduler.JobStats waiting = scheduler.stats().jobs().stream()
+					.filter(j -> !j.running()).findFirst().get();
+			assertEquals("a", waiting.tenant());
+			assertEquals(1024 * 1024, waiting.estimatedBytes());
+
+			blocker.cancel();
+			large.result().get(10, TimeUnit.SECONDS);
+		} finally {
+			scheduler.destroy();
+		}
+	}
+
+	@Test
+	void testAdmission() throws Exception {
+		ZipJobScheduler limited = new ZipJobScheduler(1, 10_000, 100_000, 0, 0);
+		try {
+			ExecutionException overLimit = assertThrows(ExecutionException.class,
+					() -> limited.submit("a", command("big", "")).result().get(10, TimeUnit.SECONDS));
+			assertTrue(overLimit.getCause() instanceof RejectedExecutionException, "Over the job limit: "+overLimit.getCause());
+			ExecutionException late = assertThrows(ExecutionException.class,
+					() -> limited.submit("a", command("small", ""), 0, Instant.now().minusSeconds(1)).result().get(10, TimeUnit.SECONDS));
+			assertTrue(late.getCause() instanceof RejectedExecutionException, "The deadline is missed already: "+late.getCause());
+			assertThrows(IllegalArgumentException.class,
+					() -> limited.submit("a", command("small", "-watch 1")));
+			assertEquals(2, limited.stats().rejected());
+		} finally {
+			limited.destroy();
+		}
+
+		ZipJobScheduler scheduler = new ZipJobScheduler(1, 64 * 1024 * 1024, 0, 2, 0);
+		try {
+			ZipJob blocker = blocker(scheduler);
+			scheduler.submit("a", command("small", ""));
+			scheduler.submit("b", command("small", ""));
+			RejectedExecutionException full = assertThrows(RejectedExecutionException.class,
+					() -> scheduler.submit("c", command("small", "")));
+			assertTrue(full.getMessage().contains("queued"), full.getMessage());
+			blocker.cancel();
+		} finally {
+			scheduler.destroy();
+		}
+	}
+
+	@Test
+	void testCancelledLeaveTheQueue() throws Exception {
+		ZipJobScheduler scheduler = new ZipJobScheduler(1, 64 * 1024 * 1024, 0, 1, 0);
+		try {
+			ZipJob blocker = blocker(scheduler);
+			ZipJob queued = scheduler.submit("a", command("small", ""));
+			await(() -> scheduler.stats().queued()==1);
+
+			queued.cancel();
+			ZipJobScheduler.Stats stats = scheduler.stats();
+			assertEquals(0, stats.queued(), "A cancelled job should leave the queue at once.");
+			assertEquals(0, stats.queuedBytes());
+			assertTrue(stats.queuedByTenant().isEmpty(), "Nor count for its tenant.");
+			assertThrows(CancellationException.class, () -> queued.result().getNow(null));
+
+			ZipJob next = scheduler.submit("b", command("small", ""));
+			blocker.cancel();
+			next.result().get(10, TimeUnit.SECONDS);
+		} finally {
+			scheduler.destroy();
+		}
+	}
+
+	@Test
+	void testInvalidCommandKeepsNoPlace() throws Exception {
+		ZipJobScheduler scheduler = new ZipJobScheduler(1, 64 * 1024 * 1024, 0, 1, 0);
+		try {
+			Files.createFile(destRootDir.resolve("taken.zip"));
+			assertThrows(RuntimeException.class, () -> scheduler.submit("a", 
+					("zipp -s "+sourceRootDir.resolve("small")+" -d "+destRootDir+" -z taken.zip").split(" +")));
+			ZipJob next = scheduler.submit("a", command("small", ""));
+			next.result().get(10, TimeUnit.SECONDS);
+		} finally {
+			scheduler.destroy();
+		}
+	}
+
+	@Test
+	void testDeadline() throws Exception {
+		ZipJobScheduler scheduler = new ZipJobScheduler(1, 64 * 1024 * 1024, 0, 0, 0);
+		try {
+			ZipJob blocker = blocker(scheduler);
+			ZipJob late = scheduler.submit("a", command("small", ""), 0, Instant.now().plusMillis(300));
+
+			ExecutionException e = assertThrows(ExecutionException.class, () -> late.result().get(10, TimeUnit.SECONDS));
+			assertTrue(e.getCause() instanceof TimeoutException, String.valueOf(e.getCause()));
+			assertEquals(1, scheduler.stats().expired());
+			assertFalse(blocker.result().isDone(), "The deadline should pass while the blocker runs.");
+			blocker.cancel();
+		} finally {
+			scheduler.destroy();
+		}
+	}
+
+}
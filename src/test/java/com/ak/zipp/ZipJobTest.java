@@ -0,0 +1,128 @@
+package com.ak.zipp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipFile;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ZipJobTest {
+
+	@TempDir
+	static Path sourceRootDir;
+
+	@TempDir
+	static Path destRootDir;
+
+	@BeforeAll
+	static void setup() throws IOException {
+		Files.createDirectories(sourceRootDir.resolve("d1"));
+		Files.write(sourceRootDir.resolve("big.bin"), new byte[3 * DirectoryZipper.COPY_BUFFER_BYTES + 1]);
+		Files.writeString(sourceRootDir.resolve("d1").resolve("a.txt"), "apple");
+	}
+
+	String[] command(String zipToFile) {
+		return ("zipp -s "+sourceRootDir+" -d "+destRootDir+" -z "+zipToFile).split(" +");
+	}
+
+	@Test
+	void testResultAndProgress() throws Exception {
+		String zipToFile = DirectoryZipperTest.aFreshZipFilename();
+		List<ZipProgress> reports = new CopyOnWriteArrayList<>();
+		List<Runnable> queued = new ArrayList<>();
+
+		ZipJob job = DirectoryZipper.submit(command(zipToFile), queued::add, true).onProgress(reports::add);
+		assertFalse(job.result().isDone(), "Job should wait for its executor.");
+		queued.forEach(Runnable::run);
+
+		ZipResult result = job.result().get(10, TimeUnit.SECONDS);
+		assertEquals(destRootDir.resolve(zipToFile), result.zipFile());
+		assertEquals(4, result.entries(), "Root folder, d1, and the 2 files.");
+		assertEquals(3L * DirectoryZipper.COPY_BUFFER_BYTES + 1 + 5, result.bytes());
+
+		ZipProgress last = reports.get(reports.size()-1);
+		assertEquals(4, last.totalEntries(), "Pre-scan should count the entries to come.");
+		assertEquals(result.bytes(), last.totalBytes(), "Pre-scan should count the bytes to come.");
+		assertEquals(result.bytes(), last.bytesDone());
+
+		try (ZipFile zipFile = new ZipFile(result.zipFile().toFile())) {
+			assertNotNull(zipFile.getEntry("d1/a.txt"));
+		}
+	}
+
+	@Test
+	void testErrorCompletesResult() throws Exception {
+		String zipToFile = DirectoryZipperTest.aFreshZipFilename();
+		List<Runnable> queued = new ArrayList<>();
+		Error error = new Error("listener broke");
+		ZipJob job = DirectoryZipper.submit(command(zipToFile), queued::add, false).onProgress(p -> { throw error; });
+		job.reportIntervalNanos = 0;
+
+		assertThrows(Error.class, () -> queued.forEach(Runnable::run), "The Error should reach the executor.");
+		assertTrue(job.result().isCompletedExceptionally(), "The result should complete anyway.");
+		assertTrue(Files.notExists(destRootDir.resolve(zipToFile)), "Partial archive should be deleted.");
+	}
+
+	@Test
+	void testRecentRate() {
+		long second = 1_000_000_000L;
+		ZipJob.RecentRate rate = new ZipJob.RecentRate(0);
+		assertEquals(100e6, rate.update(second, 100_000_000), 1, "The first sample is the average.");
+		long bytes = 100_000_000;
+		double r = 0;
+		for (int s=2; s<=20; s++)
+			r = rate.update(s*second, bytes += 1_000_000);
+		assertTrue(r<5e6, "After slowing down to 1M/s, the rate should follow, not average "+bytes*1e9/(20*second)+": "+r);
+		assertEquals(r, rate.update(20*second+1, bytes+1_000_000), "No new sample within the report interval.");
+	}
+
+	@Test
+	void testCancel() throws Exception {
+		String zipToFile = DirectoryZipperTest.aFreshZipFilename();
+		List<Runnable> queued = new ArrayList<>();
+
+		ZipJob job = DirectoryZipper.submit(command(zipToFile), queued::add, false);
+		job.cancel();
+		queued.forEach(Runnable::run);
+
+		assertTrue(job.result().isCancelled(), "Result should be cancelled.");
+		assertThrows(CancellationException.class, () -> job.result().get());
+		assertFalse(Files.exists(destRootDir.resolve(zipToFile)), "The partial archive should be deleted.");
+	}
+
+	@Test
+	void testCancelWhileCopying() throws Exception {
+		String zipToFile = DirectoryZipperTest.aFreshZipFilename();
+		List<Runnable> queued = new ArrayList<>();
+
+		ZipJob job = DirectoryZipper.submit(command(zipToFile), queued::add, false);
+		job.onProgress(p -> job.cancel());
+		job.reportIntervalNanos = 0;  // so the first buffer-full reports, and cancels
+		queued.forEach(Runnable::run);
+
+		assertTrue(job.result().isCancelled(), "Result should be cancelled.");
+		assertTrue(job.progress().bytesDone() < 3L * DirectoryZipper.COPY_BUFFER_BYTES, "Job should stop promptly.");
+		assertFalse(Files.exists(destRootDir.resolve(zipToFile)), "The partial archive should be deleted.");
+	}
+
+	@Test
+	void testBadCommandThrowsRightAway() {
+		assertThrows(IllegalArgumentException.class, () -> DirectoryZipper.submit(new String[] {"notZipp"}));
+		assertThrows(IllegalArgumentException.class, () -> DirectoryZipper.submit(new String[] {"zipp", "-bad"}));
+	}
+
+}
@@ -0,0 +1,96 @@
+package com.ak.zipp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.zip.ZipFile;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ZipPlanTest {
+
+	@TempDir
+	static Path sourceRootDir;
+
+	@TempDir
+	static Path destRootDir;
+
+	@BeforeAll
+	static void setup() throws IOException {
+		Random random = new Random(42);
+		for (int d=0; d<10; d++) {
+			Path dir = Files.createDirectories(sourceRootDir.resolve("d"+d));
+			for (int f=0; f<100; f++) {
+				StringBuilder text = new StringBuilder();
+				for (int i=0; i<200+random.nextInt(2000); i++)
+					text.append("line ").append(random.nextInt(50)).append('\n');
+				Files.writeString(dir.resolve("f"+f+".txt"), text);
+			}
+			byte[] noise = new byte[20_000];
+			random.nextBytes(noise);
+			Files.write(dir.resolve("noise.bin"), noise);
+		}
+	}
+
+	@Test
+	void testPlanMatchesTheRun() throws IOException {
+		String command = "zipp -s "+sourceRootDir+" -d "+destRootDir+" -z planned.zip -de *.bin";
+		ZipPlan plan = DirectoryZipper.plan(command.split(" +"));
+		assertTrue(Files.notExists(destRootDir.resolve("planned.zip")), "Planning should zip nothing.");
+
+		DirectoryZipper.pipe(command.split(" +"));
+		Path zipped = destRootDir.resolve("planned.zip");
+		try (ZipFile zipFile = new ZipFile(zipped.toFile())) {
+			assertEquals(zipFile.size(), plan.entries(), "The entry count should be exact.");
+		}
+		assertEquals(1000, plan.files());
+		assertTrue(plan.sampledFiles()==ZipPlan.Estimator.SAMPLE_FILES, "A sample, not every file.");
+		long actual = Files.size(zipped);
+		assertTrue(Math.abs(plan.estimatedBytes()-actual) < actual/5,
+				"Estimated "+plan.estimatedBytes()+" bytes, zipped "+actual);
+	}
+
+	@Test
+	void testEmptyFilesAreCounted() throws IOException {
+		Path src = Files.createDirectories(destRootDir.resolve("emptySrc"));
+		Files.createFile(src.resolve("empty1"));
+		Files.createFile(src.resolve("empty2"));
+		Files.writeString(src.resolve("full"), "full");
+		ZipPlan plan = DirectoryZipper.plan(("zipp -s "+src).split(" +"));
+		assertEquals(4, plan.entries(), "The root folder, and the three files.");
+		assertEquals(3, plan.files(), "Empty files are files too.");
+		assertEquals(4, plan.inputBytes());
+		assertEquals(1, plan.sampledFiles(), "Only the file with content is sampled.");
+	}
+
+	@Test
+	void testToJson() throws IOException {
+		ZipPlan plan = DirectoryZipper.plan(("zipp -s "+sourceRootDir+" -i *.bin -nr").split(" +"));
+		assertEquals(1, plan.entries(), "The root folder only.");
+		String json = plan.toJson();
+		assertTrue(json.startsWith("{\"entries\":1,\"files\":0,\"inputBytes\":0,"), json);
+		assertTrue(json.contains("\"estimatedMillis\":"), json);
+	}
+
+	@Test
+	void testPlanIsNotSubmitted() {
+		String command = "zipp -s "+sourceRootDir+" -d "+destRootDir+" -z submitted.zip -plan";
+		Exception exception = assertThrows(IllegalArgumentException.class, () -> DirectoryZipper.submit(command.split(" +")));
+		assertTrue(exception.getMessage().contains("-PLAN"), exception.getMessage());
+		assertTrue(Files.notExists(destRootDir.resolve("submitted.zip")), "A plan should zip nothing.");
+	}
+
+	@Test
+	void testPlanTreesOnly() {
+		assertThrows(IllegalArgumentException.class,
+				() -> DirectoryZipper.pipe(("zipp -s "+sourceRootDir+" -plan -fl -").split(" +")));
+	}
+
+}
@@ -0,0 +1,74 @@
+package com.ak.zipp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ZipReaderTest {
+
+	@TempDir
+	static Path tempDir;
+
+	@Test
+	void testRoundTrip() throws IOException {
+		Path zip = tempDir.resolve("roundTrip.zip");
+		List<ZipWriter.Entry> written;
+		try (ZipWriter zw = new ZipWriter(Files.newOutputStream(zip))) {
+			zw.addDirectory("d/", ZipWriterTest.MTIME);
+			zw.addFile("d/a", ZipWriterTest.MTIME, new ByteArrayInputStream(new byte[2000]));
+			zw.addFile("b", ZipWriterTest.MTIME, new ByteArrayInputStream("bee".getBytes()));
+			zw.finish();
+			written = zw.entries();
+		}
+
+		try (FileChannel ch = FileChannel.open(zip)) {
+			ZipReader.CentralDirectory cd = ZipReader.centralDirectory(ch);
+			assertEquals(written, cd.entries(), "The entries should read back as written.");
+			assertEquals(written.get(2).end(), cd.offset());
+
+			ZipWriter.Entry b = cd.entries().get(2);
+			byte[] raw = ZipReader.rawData(ch, b).readNBytes((int) b.compressedSize());
+			assertArrayEquals("bee".getBytes(), new java.util.zip.InflaterInputStream(
+					new ByteArrayInputStream(raw), new java.util.zip.Inflater(true)).readAllBytes());
+		}
+	}
+
+	@Test
+	void testOtherWriters() throws IOException {
+		Path zip = tempDir.resolve("other.zip");
+		try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zip))) {
+			zos.setComment("a comment moves the end record");
+			zos.putNextEntry(new ZipEntry("x"));
+			zos.write(new byte[100]);
+			zos.closeEntry();
+		}
+		try (FileChannel ch = FileChannel.open(zip)) {
+			ZipReader.CentralDirectory cd = ZipReader.centralDirectory(ch);
+			assertEquals(1, cd.entries().size());
+			assertEquals("x", cd.entries().get(0).name());
+			assertEquals(100, cd.entries().get(0).size());
+		}
+	}
+
+	@Test
+	void testNotAnArchive() throws IOException {
+		Path notZip = Files.writeString(tempDir.resolve("not.zip"), "just text");
+		try (FileChannel ch = FileChannel.open(notZip)) {
+			assertThrows(ZipException.class, () -> ZipReader.centralDirectory(ch));
+		}
+	}
+
+}
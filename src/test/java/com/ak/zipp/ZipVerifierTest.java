@@ -0,0 +1,128 @@
+package com.ak.zipp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipFile;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ZipVerifierTest {
+
+	@TempDir
+	static Path sourceRootDir;
+
+	@TempDir
+	static Path destRootDir;
+
+	static ExecutorService pool;
+
+	@BeforeAll
+	static void setup() throws IOException {
+		Files.createDirectories(sourceRootDir.resolve("d"));
+		for (int i=0; i<50; i++)
+			Files.writeString(sourceRootDir.resolve("d").resolve("f"+i+".txt"), ("file "+i+"\n").repeat(i*100));
+		Files.write(sourceRootDir.resolve("empty"), new byte[0]);
+		pool = Executors.newFixedThreadPool(4);
+	}
+
+	@AfterAll
+	static void tearDown() {
+		pool.shutdown();
+	}
+
+	@Test
+	void testManifestIsWrittenAndVerified() throws Exception {
+		DirectoryZipper.pipe(("zipp -s "+sourceRootDir+" -d "+destRootDir+" -z digested.zip -dg").split(" +"));
+		Path zip = destRootDir.resolve("digested.zip");
+		try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+			assertNotNull(zipFile.getEntry("zipp-manifest.SHA-256"));
+			Map<String, byte[]> digests = DigestManifest.parse(
+					zipFile.getInputStream(zipFile.getEntry("zipp-manifest.SHA-256")).readAllBytes());
+			assertEquals(51, digests.size(), "Every file, and no folder.");
+			assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(sourceRootDir.resolve("d").resolve("f7.txt"))),
+					digests.get("d/f7.txt"));
+		}
+		assertTrue(ZipVerifier.verify(zip, pool).isEmpty(), "An intact archive should verify.");
+	}
+
+	@Test
+	void testBareDigestBeforeAnotherSwitch() throws Exception {
+		DirectoryZipper.pipe(("zipp -dg -s "+sourceRootDir+" -d "+destRootDir+" -z digested-first.zip").split(" +"));
+		Path zip = destRootDir.resolve("digested-first.zip");
+		try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+			assertNotNull(zipFile.getEntry("zipp-manifest.SHA-256"), "A bare -dg, not last, should still write the manifest.");
+		}
+		assertTrue(ZipVerifier.verify(zip, pool).isEmpty());
+	}
+
+	@Test
+	void testCorruptionIsFound() throws Exception {
+		DirectoryZipper.pipe(("zipp -s "+sourceRootDir+" -d "+destRootDir+" -z corrupted.zip -dg sha-512").split(" +"));
+		Path zip = destRootDir.resolve("corrupted.zip");
+		ZipWriter.Entry victim;
+		try (FileChannel ch = FileChannel.open(zip, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			victim = ZipReader.centralDirectory(ch).entries().stream()
+					.filter(e -> e.name().equals("d/f40.txt")).findFirst().get();
+			long middle = victim.end() - victim.compressedSize()/2;
+			ByteBuffer b = ByteBuffer.allocate(1);
+			ch.read(b, middle);
+			ch.write(ByteBuffer.wrap(new byte[] {(byte) ~b.get(0)}), middle);
+		}
+		List<String> problems = ZipVerifier.verify(zip, pool);
+		assertEquals(1, problems.size(), "Only the corrupted entry -- "+problems);
+		assertTrue(problems.get(0).contains("d/f40.txt"), problems.get(0));
+	}
+
+	@Test
+	void testNoManifest() {
+		DirectoryZipper.pipe(("zipp -s "+sourceRootDir+" -d "+destRootDir+" -z plain.zip").split(" +"));
+		assertThrows(IOException.class, () -> ZipVerifier.verify(destRootDir.resolve("plain.zip"), pool));
+		assertThrows(IllegalArgumentException.class,
+				() -> DirectoryZipper.pipe(("zipp -s "+sourceRootDir+" -d "+destRootDir+" -dg NO-SUCH-HASH").split(" +")));
+	}
+
+	@Test
+	void testEscapedNames() {
+		StringBuilder sb = new StringBuilder();
+		DigestManifest.line(sb, "a\\b\nc", new byte[] {1, 2});
+		DigestManifest.line(sb, "plain name", new byte[] {3});
+		Map<String, byte[]> parsed = DigestManifest.parse(sb.toString().getBytes());
+		assertArrayEquals(new byte[] {1, 2}, parsed.get("a\\b\nc"));
+		assertArrayEquals(new byte[] {3}, parsed.get("plain name"));
+	}
+
+	@Test
+	void testDigestingReusesItsBuffers() throws Exception {
+		// many more chunks than buffers, of varied sizes, and single bytes between them
+		byte[] content = new byte[300_000];
+		new java.util.Random(1).nextBytes(content);
+		DigestManifest manifest = new DigestManifest("SHA-256", pool);
+		try (java.io.InputStream in = manifest.digesting("f", new java.io.ByteArrayInputStream(content))) {
+			byte[] b = new byte[2000];
+			int chunk = 1;
+			while (in.read()>=0 && in.read(b, 0, chunk)>=0)
+				chunk = chunk%b.length+1;
+		}
+		Map<String, byte[]> digests = DigestManifest.parse(manifest.manifest());
+		assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(content), digests.get("f"));
+	}
+
+}
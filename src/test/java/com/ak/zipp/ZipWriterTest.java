@@ -0,0 +1,112 @@
+package com.ak.zipp;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ZipWriterTest {
+
+	@TempDir
+	static Path tempDir;
+
+	static final long MTIME = 1_700_000_000_000L;
+
+	@Test
+	void testReadableByZipFile() throws IOException {
+		Path zip = tempDir.resolve("plain.zip");
+		byte[] content = "some content, some content, some content".getBytes(StandardCharsets.UTF_8);
+		try (ZipWriter zw = new ZipWriter(Files.newOutputStream(zip))) {
+			zw.addDirectory("d", MTIME);
+			zw.addFile("d/a.txt", MTIME, new ByteArrayInputStream(content));
+			zw.addFile("empty", MTIME, new ByteArrayInputStream(new byte[0]));
+			zw.addFile("d/\u00fcn\u00efcode", MTIME, new ByteArrayInputStream(content));
+		}
+
+		try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+			assertEquals(4, zipFile.size());
+			assertTrue(zipFile.getEntry("d/").isDirectory());
+			ZipEntry a = zipFile.getEntry("d/a.txt");
+			assertArrayEquals(content, zipFile.getInputStream(a).readAllBytes());
+			assertEquals(ZipWriter.dosTime(MTIME), ZipWriter.dosTime(a.getTime()), "Entry time should be the given mtime.");
+			assertEquals(0, zipFile.getInputStream(zipFile.getEntry("empty")).readAllBytes().length);
+			assertArrayEquals(content, zipFile.getInputStream(zipFile.getEntry("d/\u00fcn\u00efcode")).readAllBytes());
+		}
+	}
+
+	@Test
+	void testSameEntriesSameBytes() throws IOException {
+		assertArrayEquals(sample(), sample(), "The output should depend on the entries only.");
+	}
+
+	@Test
+	void testCarryOn() throws IOException {
+		// write 2 entries, then carry on after the first one -- as a resume would
+		ByteArrayOutputStream first = new ByteArrayOutputStream();
+		ZipWriter zw = new ZipWriter(first);
+		ZipWriter.Entry a = zw.addFile("a", MTIME, new ByteArrayInputStream(new byte[1000]));
+		zw.addFile("b", MTIME, new ByteArrayInputStream(new byte[10]));
+		zw.abandon();
+
+		ByteArrayOutputStream rest = new ByteArrayOutputStream();
+		rest.write(first.toByteArray(), 0, (int) a.end());
+		try (ZipWriter carryOn = new ZipWriter(rest, a.end(), List.of(a))) {
+			carryOn.addFile("b", MTIME, new ByteArrayInputStream(new byte[10]));
+		}
+
+		ByteArrayOutputStream whole = new ByteArrayOutputStream();
+		try (ZipWriter zw2 = new ZipWriter(whole)) {
+			zw2.addFile("a", MTIME, new ByteArrayInputStream(new byte[1000]));
+			zw2.addFile("b", MTIME, new ByteArrayInputStream(new byte[10]));
+		}
+		assertArrayEquals(whole.toByteArray(), rest.toByteArray());
+	}
+
+	@Test
+	void testDuplicateNames() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ZipWriter zw = new ZipWriter(out)) {
+			ZipWriter.Entry a = zw.addFile("a", MTIME, new ByteArrayInputStream(new byte[10]));
+			zw.addDirectory("d", MTIME);
+			long written = zw.offset();
+			assertThrows(ZipException.class, () -> zw.addFile("a", MTIME, new ByteArrayInputStream(new byte[10])));
+			assertThrows(ZipException.class, () -> zw.addDirectory("d/", MTIME));
+			assertThrows(ZipException.class, () -> zw.addRaw(a, new ByteArrayInputStream(new byte[0])));
+			assertEquals(written, zw.offset(), "Nothing should be written for a duplicate.");
+		}
+		try (ZipWriter carryOn = new ZipWriter(new ByteArrayOutputStream(), 0, 
+				List.of(new ZipWriter.Entry("b", ZipWriter.STORED, 0, 0, 0, 0, 0, 0, 0)))) {
+			assertThrows(ZipException.class, () -> carryOn.addFile("b", MTIME, new ByteArrayInputStream(new byte[0])),
+					"The entries carried on count too.");
+		}
+	}
+
+	@Test
+	void testDosTimeBefore1980() {
+		assertEquals((1 << 21) | (1 << 16), ZipWriter.dosTime(0L));
+	}
+
+	static byte[] sample() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (ZipWriter zw = new ZipWriter(out)) {
+			zw.addDirectory("d/", MTIME);
+			zw.addFile("d/x", MTIME, new ByteArrayInputStream(new byte[5000]));
+		}
+		return out.toByteArray();
+	}
+
+}
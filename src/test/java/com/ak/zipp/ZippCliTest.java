@@ -0,0 +1,53 @@
+package com.ak.zipp;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.ZipFile;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ZippCliTest {
+
+	@TempDir
+	static Path sourceRootDir;
+
+	@TempDir
+	static Path destRootDir;
+
+	@Test
+	void testWithoutZippPrefix() throws IOException {
+		Files.createFile(sourceRootDir.resolve("aFile"));
+		String zipToFile = DirectoryZipperTest.aFreshZipFilename();
+		ZippCli.main(new String[] {"-s", sourceRootDir.toString(), "-d", destRootDir.toString(), "-z", zipToFile});
+
+		try (ZipFile zipFile = new ZipFile(destRootDir.resolve(zipToFile).toFile())) {
+			assertNotNull(zipFile.getEntry("aFile"), "Zip file should contain the source files.");
+		}
+	}
+
+	@Test
+	void testStartupLog() throws IOException {
+		Path log = destRootDir.resolve("startup.log");
+		String zipToFile = DirectoryZipperTest.aFreshZipFilename();
+		System.setProperty("zipp.startup.log", log.toString());
+		try {
+			ZippCli.main(new String[] {"zipp", "-s", sourceRootDir.toString(), "-d", destRootDir.toString(), "-z", zipToFile});
+		} finally {
+			System.clearProperty("zipp.startup.log");
+		}
+
+		List<String> lines = Files.readAllLines(log);
+		assertTrue(lines.size()==1 && lines.get(0).contains("\tcli\t"), "Start-up time should be logged for the cli launcher.");
+		String[] f = lines.get(0).split("\t");
+		long firstByte = Long.parseLong(f[2].replace(" ms to first byte", ""));
+		long total = Long.parseLong(f[3].replace(" ms total", ""));
+		assertTrue(0<firstByte && firstByte<=total, "The first byte comes after JVM start, and before the end: "+lines.get(0));
+	}
+
+}